@@ -0,0 +1,95 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vafer.jdeb.debian.BinaryPackageControlFile;
+import org.vafer.jdeb.utils.MapVariableResolver;
+
+/**
+ * Builds the control archive of a package with many files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ControlBuilderBenchmark {
+
+    /** The number of files listed in the md5sums and conffiles */
+    @Param({ "100", "100000" })
+    public int files;
+
+    /** BZIP2 is not supported for the control archive */
+    @Param({ "NONE", "GZIP", "XZ", "ZSTD" })
+    public Compression compression;
+
+    private ControlBuilder builder;
+    private BinaryPackageControlFile packageControlFile;
+    private File[] controlFiles;
+    private List<String> conffiles;
+    private StringBuilder checksums;
+
+    @Setup
+    public void setUp() throws Exception {
+        File control = new File(ControlBuilderBenchmark.class.getResource("deb/control").toURI());
+        controlFiles = control.listFiles();
+
+        builder = new ControlBuilder(new NullConsole(), new MapVariableResolver(new HashMap<>()), "[[", "]]", 0L);
+        packageControlFile = builder.createPackageControlFile(new File(control, "control"), BigInteger.valueOf(files * 1024L), StandardCharsets.UTF_8, "[[", "]]");
+
+        Random random = new Random(42);
+        byte[] md5 = new byte[16];
+        checksums = new StringBuilder();
+        conffiles = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            random.nextBytes(md5);
+            String path = "usr/share/package/" + (i % 1000) + "/file" + i + ".txt";
+            checksums.append(Hex.encodeHex(md5)).append("  ").append(path).append('\n');
+            if (i % 100 == 0) {
+                conffiles.add("/etc/package/file" + i + ".conf");
+            }
+        }
+    }
+
+    @Benchmark
+    public void buildControl() throws Exception {
+        builder.buildControl(packageControlFile, controlFiles.clone(), conffiles, checksums, NullOutputStream.INSTANCE, StandardCharsets.UTF_8, new TarOptions().compression(compression));
+    }
+}
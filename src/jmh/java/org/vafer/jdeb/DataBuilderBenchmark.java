@@ -0,0 +1,77 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vafer.jdeb.producers.DataProducerDirectory;
+
+/**
+ * Builds the data archive of the synthetic packages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class DataBuilderBenchmark {
+
+    @Param({ "TINY_FILES", "HUGE_FILES", "DEEP_TREE", "MIXED" })
+    public PackageShape shape;
+
+    @Param({ "NONE", "GZIP", "BZIP2", "XZ", "ZSTD" })
+    public Compression compression;
+
+    private File tree;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        tree = shape.create();
+        output = File.createTempFile("jdeb-benchmark", ".tar" + compression.getExtension());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        PackageShape.delete(tree);
+        output.delete();
+    }
+
+    @Benchmark
+    public BigInteger buildData() throws Exception {
+        DataBuilder builder = new DataBuilder(new NullConsole(), 0L);
+        DataProducer producer = new DataProducerDirectory(tree, null, null, null);
+        return builder.buildData(Collections.singletonList(producer), output, new StringBuilder(), new TarOptions().compression(compression), false);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The shapes of the synthetic package trees used by the benchmarks. The
+ * content is generated from a fixed seed, so every run packages the same
+ * files.
+ */
+public enum PackageShape {
+
+    /** 100k small text files spread over 1000 directories */
+    TINY_FILES {
+        void generate(File root, Random random) throws IOException {
+            for (int i = 0; i < 100_000; i++) {
+                File dir = new File(root, "usr/share/tiny/" + (i % 1000));
+                writeText(new File(dir, "file" + i + ".txt"), 64 + random.nextInt(448), random);
+            }
+        }
+    },
+
+    /** A few files of 64 MiB, partly compressible */
+    HUGE_FILES {
+        void generate(File root, Random random) throws IOException {
+            for (int i = 0; i < 4; i++) {
+                writeBinary(new File(root, "opt/huge/blob" + i + ".bin"), 64 * 1024 * 1024, random);
+            }
+        }
+    },
+
+    /** A chain of 200 nested directories with a few files at every level */
+    DEEP_TREE {
+        void generate(File root, Random random) throws IOException {
+            File dir = new File(root, "usr/lib/deep");
+            for (int depth = 0; depth < 200; depth++) {
+                dir = new File(dir, "level" + depth);
+                for (int i = 0; i < 5; i++) {
+                    writeText(new File(dir, "file" + i + ".txt"), 1024, random);
+                }
+            }
+        }
+    },
+
+    /** A typical Java application: jars, configuration files and scripts */
+    MIXED {
+        void generate(File root, Random random) throws IOException {
+            for (int i = 0; i < 200; i++) {
+                writeJar(new File(root, "usr/share/app/lib/library" + i + ".jar"), 20 + random.nextInt(200), random);
+            }
+            for (int i = 0; i < 500; i++) {
+                writeText(new File(root, "etc/app/conf.d/setting" + i + ".properties"), 256 + random.nextInt(4096), random);
+            }
+            for (int i = 0; i < 50; i++) {
+                File script = new File(root, "usr/bin/app-tool" + i);
+                writeText(script, 2048, random);
+                script.setExecutable(true);
+            }
+            writeBinary(new File(root, "usr/share/app/data/index.bin"), 16 * 1024 * 1024, random);
+        }
+    };
+
+    private static final String[] WORDS = {
+        "package", "debian", "archive", "control", "version", "depends", "maintainer",
+        "the", "of", "and", "to", "a", "in", "is", "for", "with", "on", "file", "data"
+    };
+
+    abstract void generate(File root, Random random) throws IOException;
+
+    /**
+     * Generates the tree of files in a new temporary directory.
+     */
+    public File create() throws IOException {
+        File root = Files.createTempDirectory("jdeb-benchmark-" + name().toLowerCase()).toFile();
+        generate(root, new Random(42));
+        return root;
+    }
+
+    /**
+     * Deletes a tree created by {@link #create()}.
+     */
+    public static void delete(File root) throws IOException {
+        FileUtils.deleteDirectory(root);
+    }
+
+    static byte[] text(int size, Random random) {
+        StringBuilder text = new StringBuilder(size + 16);
+        while (text.length() < size) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            text.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        text.setLength(size);
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void writeText(File file, int size, Random random) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), text(size, random));
+    }
+
+    /**
+     * Writes a file alternating between text and random bytes, which
+     * compresses to roughly half of its size.
+     */
+    private static void writeBinary(File file, int size, Random random) throws IOException {
+        file.getParentFile().mkdirs();
+        byte[] noise = new byte[64 * 1024];
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            for (int written = 0; written < size; written += noise.length) {
+                if ((written / noise.length) % 2 == 0) {
+                    random.nextBytes(noise);
+                    out.write(noise);
+                } else {
+                    out.write(text(noise.length, random));
+                }
+            }
+        }
+    }
+
+    private static void writeJar(File file, int classes, Random random) throws IOException {
+        file.getParentFile().mkdirs();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < classes; i++) {
+                out.putNextEntry(new ZipEntry("org/example/Class" + i + ".class"));
+                byte[] content = new byte[512 + random.nextInt(4096)];
+                random.nextBytes(content);
+                // the constant pool of a class is mostly text
+                System.arraycopy(text(content.length / 2, random), 0, content, 0, content.length / 2);
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Maps an entry through a prefix and an ownership mapper, one after the
+ * other and fused in a chain. The allocations per entry are reported by
+ * the gc profiler (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MapperChainBenchmark {
+
+    private Mapper[] mappers;
+    private Mapper chain;
+    private TarArchiveEntry entry;
+
+    @Setup
+    public void setUp() {
+        mappers = new Mapper[] {
+            new PermMapper(-1, -1, null, null, -1, -1, 1, "/usr/share/app"),
+            new PermMapper(0, 0, "root", "root", 0644, 0755, 0, null)
+        };
+        chain = MapperChain.of(mappers);
+        entry = new TarArchiveEntry("target/lib/commons-compress.jar", true);
+    }
+
+    @Benchmark
+    public TarArchiveEntry sequential() {
+        // the same name is mapped every time
+        entry.setName("target/lib/commons-compress.jar");
+        TarArchiveEntry mapped = entry;
+        for (Mapper mapper : mappers) {
+            mapped = mapper.map(mapped);
+        }
+        return mapped;
+    }
+
+    @Benchmark
+    public TarArchiveEntry chain() {
+        entry.setName("target/lib/commons-compress.jar");
+        return chain.map(entry);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.signing;
+
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.bouncycastle.bcpg.HashAlgorithmTags;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Clear signs a changes file like text with the test key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PGPSignerBenchmark {
+
+    /** The number of lines of the signed text */
+    @Param({ "20", "20000" })
+    public int lines;
+
+    private PGPSigner signer;
+    private String text;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (InputStream ring = PGPSignerBenchmark.class.getClassLoader().getResourceAsStream("org/vafer/gpg/secring.gpg")) {
+            signer = new PGPSigner(ring, "2E074D8F", "test", HashAlgorithmTags.SHA256);
+        }
+
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            builder.append(' ').append(Long.toHexString(random.nextLong())).append(Long.toHexString(random.nextLong()));
+            builder.append(' ').append(random.nextInt(100000)).append(" misc optional package_").append(i).append("_all.deb\n");
+        }
+        text = builder.toString();
+    }
+
+    @Benchmark
+    public void clearSign() throws Exception {
+        signer.clearSign(text, NullOutputStream.INSTANCE);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Classifies several MiB of content, read through an {@link InformationInputStream}
+ * or passed directly to a {@link ContentClassifier}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InformationInputStreamBenchmark {
+
+    @Param({ "SCRIPT", "TEXT", "BINARY" })
+    public String content;
+
+    /** The size of the content in MiB */
+    @Param({ "1", "8" })
+    public int size;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        data = new byte[size * 1024 * 1024];
+        Random random = new Random(42);
+        if ("BINARY".equals(content)) {
+            random.nextBytes(data);
+        } else {
+            StringBuilder text = new StringBuilder("SCRIPT".equals(content) ? "#!/bin/sh\n" : "");
+            while (text.length() < data.length) {
+                text.append("echo \"line ").append(random.nextInt()).append("\"\r\n");
+            }
+            System.arraycopy(text.toString().getBytes(StandardCharsets.US_ASCII), 0, data, 0, data.length);
+        }
+    }
+
+    @Benchmark
+    public boolean read() throws IOException {
+        InformationInputStream in = new InformationInputStream(new ByteArrayInputStream(data));
+        Utils.copy(in, NullOutputStream.INSTANCE);
+        return in.isShell() && in.hasUnixLineEndings();
+    }
+
+    @Benchmark
+    public boolean classify() {
+        ContentClassifier classifier = new ContentClassifier();
+        classifier.update(data, 0, data.length);
+        return classifier.isShell() && classifier.hasUnixLineEndings();
+    }
+}
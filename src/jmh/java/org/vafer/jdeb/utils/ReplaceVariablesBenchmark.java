@@ -0,0 +1,103 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replaces the variables of a control file like template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReplaceVariablesBenchmark {
+
+    /** The number of times the template is repeated */
+    @Param({ "1", "1000" })
+    public int repeat;
+
+    private VariableResolver resolver;
+    private String expression;
+    private VariableTemplate compiled;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("name", "jdeb");
+        variables.put("version", "1.16-SNAPSHOT");
+        variables.put("maintainer", "John Doe <john@doe.org>");
+        variables.put("project.description", "Creates Debian packages from Java builds");
+        resolver = new MapVariableResolver(variables);
+
+        String template = "Package: [[name]]\n"
+                + "Version: [[version]]\n"
+                + "Section: misc\n"
+                + "Priority: optional\n"
+                + "Architecture: all\n"
+                + "Depends: java8-runtime-headless | java8-runtime\n"
+                + "Maintainer: [[maintainer]]\n"
+                + "Description: [[project.description]]\n"
+                + " Revision [[undefined]], built with [[name]] [[version]].\n";
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < repeat; i++) {
+            builder.append(template);
+        }
+        expression = builder.toString();
+        compiled = VariableTemplate.compile(expression, "[[", "]]");
+    }
+
+    @Benchmark
+    public String replaceVariables() {
+        return Utils.replaceVariables(resolver, expression, "[[", "]]");
+    }
+
+    /** Renders the template parsed once */
+    @Benchmark
+    public String render() {
+        return compiled.render(resolver);
+    }
+
+    /** Filters the expression line by line like a control file */
+    @Benchmark
+    public Writer filter() throws IOException {
+        Writer writer = NullWriter.INSTANCE;
+        VariableTemplate.filter(new StringReader(expression), writer, resolver, "[[", "]]");
+        return writer;
+    }
+}
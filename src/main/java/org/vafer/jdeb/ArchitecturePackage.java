@@ -0,0 +1,54 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.util.Collection;
+
+/**
+ * A package built for an architecture, made of the data shared by all the
+ * architectures and of the data specific to this one (like native libraries).
+ */
+public final class ArchitecturePackage {
+
+    /** The architecture of the package, replacing the one of the control file */
+    private final String architecture;
+
+    /** The Debian package produced */
+    private final File deb;
+
+    /** The producers of the data specific to the architecture */
+    private final Collection<DataProducer> dataProducers;
+
+    public ArchitecturePackage(String architecture, File deb, Collection<DataProducer> dataProducers) {
+        this.architecture = architecture;
+        this.deb = deb;
+        this.dataProducers = dataProducers;
+    }
+
+    public String getArchitecture() {
+        return architecture;
+    }
+
+    public File getDeb() {
+        return deb;
+    }
+
+    public Collection<DataProducer> getDataProducers() {
+        return dataProducers;
+    }
+}
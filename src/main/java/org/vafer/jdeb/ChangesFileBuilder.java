@@ -40,7 +40,33 @@ class ChangesFileBuilder {
         this.outputTimestampMs = outputTimestampMs;
     }
 
+    /**
+     * The size and the checksums of a binary package listed in the changes file.
+     */
+    static final class PackageChecksums {
+        private final long size;
+        private final String md5;
+        private final String sha1;
+        private final String sha256;
+
+        PackageChecksums(long size, String md5, String sha1, String sha256) {
+            this.size = size;
+            this.md5 = md5;
+            this.sha1 = sha1;
+            this.sha256 = sha256;
+        }
+    }
+
     public ChangesFile createChanges(BinaryPackageControlFile packageControlFile, File binaryPackage, ChangesProvider changesProvider) throws IOException, PackagingException {
+        return createChanges(packageControlFile, binaryPackage, null, changesProvider);
+    }
+
+    /**
+     * Creates the changes file of a binary package.
+     *
+     * @param checksums the checksums computed while the package was written, or null to read the package
+     */
+    ChangesFile createChanges(BinaryPackageControlFile packageControlFile, File binaryPackage, PackageChecksums checksums, ChangesProvider changesProvider) throws IOException, PackagingException {
 
         ChangesFile changesFile = new ChangesFile();
         changesFile.setChanges(changesProvider.getChangesSets());
@@ -48,32 +74,24 @@ class ChangesFileBuilder {
 
         changesFile.set("Date", outputTimestampMs == null ? ChangesFile.formatDate(new Date()) : ChangesFile.formatDateUTC(new Date(outputTimestampMs)));
 
-        try {
-            // compute the checksums of the binary package
-            InformationOutputStream md5output = new InformationOutputStream(NullOutputStream.INSTANCE, MessageDigest.getInstance("MD5"));
-            InformationOutputStream sha1output = new InformationOutputStream(md5output, MessageDigest.getInstance("SHA1"));
-            InformationOutputStream sha256output = new InformationOutputStream(sha1output, MessageDigest.getInstance("SHA-256"));
-
-            FileUtils.copyFile(binaryPackage, sha256output);
+        if (checksums == null) {
+            checksums = computeChecksums(binaryPackage);
+        }
 
-            // Checksums-Sha1:
-            //  56ef4c6249dc3567fd2967f809c42d1f9b61adf7 45964 jdeb.deb
-            changesFile.set("Checksums-Sha1", sha1output.getHexDigest() + " " + binaryPackage.length() + " " + binaryPackage.getName());
+        // Checksums-Sha1:
+        //  56ef4c6249dc3567fd2967f809c42d1f9b61adf7 45964 jdeb.deb
+        changesFile.set("Checksums-Sha1", checksums.sha1 + " " + checksums.size + " " + binaryPackage.getName());
 
-            // Checksums-Sha256:
-            //  38c6fa274eb9299a69b739bcbdbd05c7ffd1d8d6472f4245ed732a25c0e5d616 45964 jdeb.deb
-            changesFile.set("Checksums-Sha256", sha256output.getHexDigest() + " " + binaryPackage.length() + " " + binaryPackage.getName());
+        // Checksums-Sha256:
+        //  38c6fa274eb9299a69b739bcbdbd05c7ffd1d8d6472f4245ed732a25c0e5d616 45964 jdeb.deb
+        changesFile.set("Checksums-Sha256", checksums.sha256 + " " + checksums.size + " " + binaryPackage.getName());
 
-            StringBuilder files = new StringBuilder(md5output.getHexDigest());
-            files.append(' ').append(binaryPackage.length());
-            files.append(' ').append(packageControlFile.get("Section"));
-            files.append(' ').append(packageControlFile.get("Priority"));
-            files.append(' ').append(binaryPackage.getName());
-            changesFile.set("Files", files.toString());
-
-        } catch (NoSuchAlgorithmException e) {
-            throw new PackagingException("Unable to compute the checksums for " + binaryPackage, e);
-        }
+        StringBuilder files = new StringBuilder(checksums.md5);
+        files.append(' ').append(checksums.size);
+        files.append(' ').append(packageControlFile.get("Section"));
+        files.append(' ').append(packageControlFile.get("Priority"));
+        files.append(' ').append(binaryPackage.getName());
+        changesFile.set("Files", files.toString());
 
         if (!changesFile.isValid()) {
             throw new PackagingException("Changes file fields are invalid " + changesFile.invalidFields() +
@@ -83,4 +101,22 @@ class ChangesFileBuilder {
 
         return changesFile;
     }
+
+    /**
+     * Reads the binary package to compute its checksums.
+     */
+    private static PackageChecksums computeChecksums(File binaryPackage) throws IOException, PackagingException {
+        try {
+            InformationOutputStream md5output = new InformationOutputStream(NullOutputStream.INSTANCE, MessageDigest.getInstance("MD5"));
+            InformationOutputStream sha1output = new InformationOutputStream(md5output, MessageDigest.getInstance("SHA1"));
+            InformationOutputStream sha256output = new InformationOutputStream(sha1output, MessageDigest.getInstance("SHA-256"));
+
+            FileUtils.copyFile(binaryPackage, sha256output);
+
+            return new PackageChecksums(binaryPackage.length(), md5output.getHexDigest(), sha1output.getHexDigest(), sha256output.getHexDigest());
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new PackagingException("Unable to compute the checksums for " + binaryPackage, e);
+        }
+    }
 }
@@ -16,25 +16,41 @@
 
 package org.vafer.jdeb;
 
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import com.github.luben.zstd.Zstd;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+import org.vafer.jdeb.utils.ParallelGzipOutputStream;
+import org.vafer.jdeb.utils.ParallelXzOutputStream;
 
 /**
- * Compression method used for the data file.
+ * Compression method used for the data and control files.
  */
 public enum Compression {
 
-    NONE(""),
-    GZIP(".gz"),
-    BZIP2(".bz2"),
-    XZ(".xz");
+    NONE("", 0, 0),
+    GZIP(".gz", 0, 9),
+    BZIP2(".bz2", 1, 9),
+    XZ(".xz", 0, 9),
+    ZSTD(".zst", 1, 22);
 
     private String extension;
+    private int minimumLevel;
+    private int maximumLevel;
 
-    Compression(String extension) {
+    Compression(String extension, int minimumLevel, int maximumLevel) {
         this.extension = extension;
+        this.minimumLevel = minimumLevel;
+        this.maximumLevel = maximumLevel;
     }
 
     /**
@@ -44,6 +60,20 @@ public enum Compression {
         return extension;
     }
 
+    /**
+     * Returns the lowest compression level supported by the compression method
+     */
+    public int getMinimumLevel() {
+        return minimumLevel;
+    }
+
+    /**
+     * Returns the highest compression level supported by the compression method
+     */
+    public int getMaximumLevel() {
+        return maximumLevel;
+    }
+
     public OutputStream toCompressedOutputStream(OutputStream out) throws CompressorException {
         switch (this) {
             case GZIP:
@@ -52,11 +82,69 @@ public enum Compression {
                 return new CompressorStreamFactory().createCompressorOutputStream("bzip2", out);
             case XZ:
                 return new CompressorStreamFactory().createCompressorOutputStream("xz", out);
+            case ZSTD:
+                return new CompressorStreamFactory().createCompressorOutputStream("zstd", out);
             default:
                 return out;
         }
     }
 
+    /**
+     * Returns a stream compressing with this method and the settings of the
+     * specified options. Gzip, xz and zstd compression are spread over
+     * several threads if more than one compression thread is configured.
+     *
+     * @param out     the stream receiving the compressed data
+     * @param options the options of the tar file being compressed
+     */
+    public OutputStream toCompressedOutputStream(OutputStream out, TarOptions options) throws CompressorException, IOException {
+        int threads = options.compressionThreads();
+        Integer level = options.compressionLevel();
+
+        switch (this) {
+            case GZIP:
+                if (threads > 1) {
+                    return new ParallelGzipOutputStream(out, threads, options.compressionBlockSize() > 0 ? options.compressionBlockSize() : ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE, level != null ? level : Deflater.DEFAULT_COMPRESSION);
+                } else if (level != null) {
+                    GzipParameters parameters = new GzipParameters();
+                    parameters.setCompressionLevel(level);
+                    return new GzipCompressorOutputStream(out, parameters);
+                }
+                break;
+            case BZIP2:
+                if (level != null) {
+                    return new BZip2CompressorOutputStream(out, level);
+                }
+                break;
+            case XZ:
+                if (threads > 1) {
+                    return new ParallelXzOutputStream(out, threads, options.xzBlockSize(), level != null ? level : LZMA2Options.PRESET_DEFAULT);
+                } else if (level != null) {
+                    return new XZOutputStream(out, new LZMA2Options(level));
+                }
+                break;
+            case ZSTD:
+                return ZstdCompressorOutputStream.builder()
+                    .setOutputStream(out)
+                    .setLevel(level != null ? level : Zstd.defaultCompressionLevel())
+                    .setWorkers(threads > 1 ? threads : 0)
+                    .get();
+            default:
+                break;
+        }
+        return toCompressedOutputStream(out);
+    }
+
+    /**
+     * Tells if the concatenation of streams compressed with this method is
+     * decompressed by dpkg as a single stream, like the members of a gzip file
+     * or the frames of zstd. The xz streams could be concatenated as well, but
+     * dpkg stops after the first one.
+     */
+    public boolean isConcatenable() {
+        return this == NONE || this == GZIP || this == ZSTD;
+    }
+
     /**
      * Returns the compression method corresponding to the specified name.
      * The matching is case insensitive.
@@ -71,6 +159,8 @@ public enum Compression {
             return BZIP2;
         } else if ("xz".equalsIgnoreCase(name)) {
             return XZ;
+        } else if ("zstd".equalsIgnoreCase(name) || "zst".equalsIgnoreCase(name)) {
+            return ZSTD;
         } else if ("none".equalsIgnoreCase(name)) {
             return NONE;
         } else {
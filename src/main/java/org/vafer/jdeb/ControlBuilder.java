@@ -16,13 +16,18 @@
 
 package org.vafer.jdeb;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.text.ParseException;
@@ -31,18 +36,18 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.tools.ant.DirectoryScanner;
 import org.vafer.jdeb.debian.BinaryPackageControlFile;
 import org.vafer.jdeb.mapping.PermMapper;
+import org.vafer.jdeb.utils.ContentClassifier;
 import org.vafer.jdeb.utils.FilteredFile;
-import org.vafer.jdeb.utils.InformationInputStream;
-import org.vafer.jdeb.utils.Utils;
+import org.vafer.jdeb.utils.UnixLineEndingsWriter;
 import org.vafer.jdeb.utils.VariableResolver;
 
 import static java.nio.charset.StandardCharsets.*;
@@ -58,6 +63,17 @@ class ControlBuilder {
     /** The name of the other control files subject to token substitution */
     private static final Set<String> CONFIGURATION_FILENAMES = new HashSet<>(Arrays.asList("conffiles", "templates", "triggers", "copyright"));
 
+    /** The size of the control files kept in memory, larger files are buffered on disk */
+    private static final int CONTROL_BUFFER_SIZE = 1024 * 1024;
+
+    /** The number of bytes read to guess the type of a control file */
+    private static final int SNIFFED_SIZE = 16;
+
+    /** Writes the content of a control file */
+    private interface ContentWriter {
+        void write(Writer out) throws IOException;
+    }
+
     private Console console;
     private VariableResolver resolver;
     private final String openReplaceToken;
@@ -79,24 +95,20 @@ class ControlBuilder {
      * @param controlFiles the other control information files (maintainer scripts, etc)
      * @param conffiles    the configuration files
      * @param checksums the md5 checksums of the files in the data archive
-     * @param output
+     * @param output the stream receiving the compressed control archive, closed once complete
+     * @param options the compression settings of the control file
      * @return
      * @throws java.io.FileNotFoundException
      * @throws java.io.IOException
      * @throws java.text.ParseException
      */
-    void buildControl(BinaryPackageControlFile packageControlFile, File[] controlFiles, List<String> conffiles, StringBuilder checksums, File output, Charset encoding) throws IOException, ParseException {
+    void buildControl(BinaryPackageControlFile packageControlFile, File[] controlFiles, List<String> conffiles, StringBuilder checksums, OutputStream output, Charset encoding, TarOptions options) throws IOException, ParseException {
 
         if (packageControlFile == null) {
             throw new FileNotFoundException("No 'control' file found in " + controlFiles.toString());
         }
 
-        final File dir = output.getParentFile();
-        if (dir != null && (!dir.exists() || !dir.isDirectory())) {
-            throw new IOException("Cannot write control file at '" + output.getAbsolutePath() + "'");
-        }
-
-        final TarArchiveOutputStream outputStream = new TarArchiveOutputStream(new GZIPOutputStream(new FileOutputStream(output)));
+        final TarArchiveOutputStream outputStream = new TarArchiveOutputStream(createCompressedOutputStream(output, options));
         outputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
 
         boolean foundConffiles = false;
@@ -123,27 +135,9 @@ class ControlBuilder {
             }
 
             if (CONFIGURATION_FILENAMES.contains(file.getName()) || MAINTAINER_SCRIPTS.contains(file.getName())) {
-
-                FilteredFile configurationFile = new FilteredFile(new FileInputStream(file), resolver, encoding, openReplaceToken, closeReplaceToken);
-                addControlEntry(file.getName(), configurationFile.toString(), outputStream);
-
+                addControlEntry(file.getName(), out -> FilteredFile.filter(new FileInputStream(file), out, resolver, encoding, openReplaceToken, closeReplaceToken), outputStream);
             } else {
-
-                // initialize the information stream to guess the type of the file
-                InformationInputStream infoStream = new InformationInputStream(new FileInputStream(file));
-                Utils.copy(infoStream, NullOutputStream.INSTANCE);
-                infoStream.close();
-
-                // fix line endings for shell scripts
-                InputStream in = new FileInputStream(file);
-                if (infoStream.isShell() && !infoStream.hasUnixLineEndings()) {
-                    byte[] buf = Utils.toUnixLineEndings(in, encoding);
-                    in = new ByteArrayInputStream(buf);
-                }
-
-                addControlEntry(file.getName(), IOUtils.toString(in, encoding), outputStream);
-
-                in.close();
+                addControlEntry(file.getName(), out -> copyControlFile(file, out, encoding), outputStream);
             }
         }
 
@@ -156,7 +150,7 @@ class ControlBuilder {
         }
 
         addControlEntry("control", packageControlFile.toString(), outputStream);
-        addControlEntry("md5sums", checksums.toString(), outputStream);
+        addControlEntry("md5sums", out -> write(checksums, out), outputStream);
 
         outputStream.close();
     }
@@ -225,28 +219,94 @@ class ControlBuilder {
     }
 
 
+    private OutputStream createCompressedOutputStream(OutputStream output, TarOptions options) throws IOException {
+        try {
+            return options.compression().toCompressedOutputStream(output, options);
+        } catch (CompressorException e) {
+            throw new IOException("Could not create the " + options.compression() + " compressor for the control file", e);
+        }
+    }
+
+    /**
+     * Copies a control file, the line endings of the shell scripts are fixed.
+     */
+    private void copyControlFile(File file, Writer out, Charset encoding) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            // guess the type of the file from its first bytes
+            final byte[] head = new byte[SNIFFED_SIZE];
+            in.mark(head.length);
+            final int length = IOUtils.read(in, head);
+            in.reset();
+            final ContentClassifier classifier = new ContentClassifier();
+            classifier.update(head, 0, length);
+
+            final Reader reader = new InputStreamReader(in, encoding);
+            if (classifier.isShell()) {
+                // fix line endings for shell scripts, the text is unchanged without carriage returns
+                try (Writer unixOut = new UnixLineEndingsWriter(out)) {
+                    IOUtils.copy(reader, unixOut);
+                }
+            } else {
+                IOUtils.copy(reader, out);
+            }
+        }
+    }
+
+    /**
+     * Writes the content by chunks, without copying it into a String.
+     */
+    private static void write(StringBuilder content, Writer out) throws IOException {
+        final char[] chunk = new char[8192];
+        for (int start = 0; start < content.length(); start += chunk.length) {
+            final int end = Math.min(start + chunk.length, content.length());
+            content.getChars(start, end, chunk, 0);
+            out.write(chunk, 0, end - start);
+        }
+    }
+
     private void addControlEntry(final String pName, final String pContent, final TarArchiveOutputStream pOutput) throws IOException {
+        addControlEntry(pName, out -> out.write(pContent), pOutput);
+    }
+
+    /**
+     * Adds a control file whose content is encoded in UTF-8 while it's
+     * written. The content is buffered to know its size, the large files
+     * on disk.
+     */
+    private void addControlEntry(final String pName, final ContentWriter pContent, final TarArchiveOutputStream pOutput) throws IOException {
 
         console.info("Adding control: " + pName);
 
-        final byte[] data = pContent.getBytes(UTF_8);
+        final DeferredFileOutputStream buffer = DeferredFileOutputStream.builder()
+            .setThreshold(CONTROL_BUFFER_SIZE)
+            .setPrefix("jdeb")
+            .get();
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(buffer, UTF_8))) {
+                pContent.write(writer);
+            }
 
-        final TarArchiveEntry entry = new TarArchiveEntry("./" + pName, true);
-        entry.setSize(data.length);
-        entry.setNames("root", "root");
-        if (outputTimestampMs != null) {
-            entry.setModTime(outputTimestampMs);
-        }
+            final TarArchiveEntry entry = new TarArchiveEntry("./" + pName, true);
+            entry.setSize(buffer.getByteCount());
+            entry.setNames("root", "root");
+            if (outputTimestampMs != null) {
+                entry.setModTime(outputTimestampMs);
+            }
 
-        if (MAINTAINER_SCRIPTS.contains(pName)) {
-            entry.setMode(PermMapper.toMode("755"));
-        } else {
-            entry.setMode(PermMapper.toMode("644"));
-        }
+            if (MAINTAINER_SCRIPTS.contains(pName)) {
+                entry.setMode(PermMapper.toMode("755"));
+            } else {
+                entry.setMode(PermMapper.toMode("644"));
+            }
 
-        pOutput.putArchiveEntry(entry);
-        pOutput.write(data);
-        pOutput.closeArchiveEntry();
+            pOutput.putArchiveEntry(entry);
+            buffer.writeTo(pOutput);
+            pOutput.closeArchiveEntry();
+        } finally {
+            if (!buffer.isInMemory() && !buffer.getFile().delete()) {
+                console.warn("Could not delete the temporary file " + buffer.getFile());
+            }
+        }
     }
 
     /**
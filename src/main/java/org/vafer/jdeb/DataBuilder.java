@@ -23,22 +23,48 @@ import org.apache.commons.compress.archivers.zip.ZipEncoding;
 import org.apache.commons.compress.archivers.zip.ZipEncodingHelper;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.vafer.jdeb.utils.ContentClassifier;
+import org.vafer.jdeb.utils.PatternMatcher;
+import org.vafer.jdeb.utils.UnixLineEndingsWriter;
 import org.vafer.jdeb.utils.Utils;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Builds the data archive of the Debian package.
@@ -49,6 +75,15 @@ class DataBuilder {
 
     private ZipEncoding encoding;
 
+    /** The maximum size of the content of a file kept in memory while it's compared with the previous files or converted */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** The number of bytes read at the beginning of the files to guess their type */
+    private static final int SNIFFED_SIZE = 16;
+
+    /** The maximum number of entries waiting to be written to a data archive built concurrently */
+    private static final int MAX_PENDING_ENTRIES = 1024;
+
     private final Long outputTimestampMs;
 
     private static final class Total {
@@ -94,217 +129,848 @@ class DataBuilder {
      */
     BigInteger buildData(Collection<DataProducer> producers, File output, final StringBuilder checksums, TarOptions options, boolean ignoreBrokenLinks) throws NoSuchAlgorithmException, IOException, CompressorException {
 
-        final File dir = output.getParentFile();
-        if (dir != null && (!dir.exists() || !dir.isDirectory())) {
-            throw new IOException("Cannot write data file at '" + output.getAbsolutePath() + "'");
+        final DataWriter receiver = new DataWriter(output, false, checksums, options, new DirectoryIndex(), false);
+        write(producers, receiver, options, ignoreBrokenLinks, false);
+
+        console.debug("Total size: " + receiver.dataSize);
+
+        return receiver.dataSize.count;
+    }
+
+    /**
+     * Build the beginning of data archives from the provided DataProducers, the
+     * data shared by several packages. The segment is compressed separately and
+     * without the end of the tar archive, the archives continuing it are made
+     * of a copy of the segment followed by their own compressed entries. This
+     * requires a compression method supporting concatenated streams.
+     *
+     * @param producers
+     * @param output the segment compressed
+     * @param options Options used to build the data files
+     * @param ignoreBrokenLinks Whether to ignore broken symlinks in data directories
+     * @return the segment, to be continued by {@link #buildData(Collection, Segment, File, StringBuilder, TarOptions, boolean)}
+     */
+    Segment buildSegment(Collection<DataProducer> producers, File output, TarOptions options, boolean ignoreBrokenLinks) throws NoSuchAlgorithmException, IOException, CompressorException {
+        if (!options.compression().isConcatenable()) {
+            throw new IllegalArgumentException("The " + options.compression() + " compression can't be split in segments");
         }
 
-        final TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(
-            options.compression().toCompressedOutputStream(new FileOutputStream(output))
-        );
-        tarOutputStream.setLongFileMode(options.longFileMode());
-        tarOutputStream.setBigNumberMode(options.bigNumberMode());
+        final StringBuilder checksums = new StringBuilder();
+        final DataWriter receiver = new DataWriter(output, false, checksums, options, new DirectoryIndex(), true);
+        write(producers, receiver, options, ignoreBrokenLinks, true);
 
-        final MessageDigest digest = MessageDigest.getInstance("MD5");
+        console.debug("Segment size: " + receiver.dataSize);
 
-        final Total dataSize = new Total();
+        return new Segment(output, receiver.dataSize.count, checksums.toString(), receiver.directories);
+    }
 
-        final List<String> addedDirectories = new ArrayList<>();
-        final DataConsumer receiver = new DataConsumer() {
+    /**
+     * Build a data archive continuing a segment with the provided DataProducers.
+     *
+     * @param producers
+     * @param segment the beginning of the archive
+     * @param output
+     * @param checksums the md5sums of the whole archive
+     * @param options Options used to build the data file, with the compression of the segment
+     * @param ignoreBrokenLinks Whether to ignore broken symlinks in data directories
+     * @return the size of the data of the whole archive
+     */
+    BigInteger buildData(Collection<DataProducer> producers, Segment segment, File output, StringBuilder checksums, TarOptions options, boolean ignoreBrokenLinks) throws NoSuchAlgorithmException, IOException, CompressorException {
+        Files.copy(segment.file.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        checksums.append(segment.checksums);
+
+        final DataWriter receiver = new DataWriter(output, true, checksums, options, segment.directories.copy(), false);
+        write(producers, receiver, options, ignoreBrokenLinks, false);
+
+        final BigInteger size = segment.size.add(receiver.dataSize.count);
+
+        console.debug("Total size: " + size);
 
-            public void onEachDir(TarArchiveEntry dirEntry) throws IOException {
-                // Check link name
-                checkField(dirEntry.getLinkName(), TarConstants.NAMELEN);
-                // Check user name
-                checkField(dirEntry.getUserName(), TarConstants.UNAMELEN);
-                // Check group name
-                checkField(dirEntry.getUserName(), TarConstants.GNAMELEN);
+        return size;
+    }
 
-                dirEntry.setName(fixPathTar(dirEntry.getName()));
+    /**
+     * The beginning of data archives, compressed separately.
+     */
+    static final class Segment {
+
+        private final File file;
+        private final BigInteger size;
+        private final String checksums;
+        private final DirectoryIndex directories;
+
+        private Segment(File file, BigInteger size, String checksums, DirectoryIndex directories) {
+            this.file = file;
+            this.size = size;
+            this.checksums = checksums;
+            this.directories = directories;
+        }
+    }
+
+    /**
+     * Writes the entries of the producers and finishes the archive, or its segment.
+     */
+    private void write(Collection<DataProducer> producers, DataWriter receiver, TarOptions options, boolean ignoreBrokenLinks, boolean segment) throws IOException {
+        boolean finishedWithoutErrors = true;
+        try {
+            if (options.readAheadThreads() > 0) {
+                ReadAheadPipeline pipeline = new ReadAheadPipeline(options.readAheadThreads(), ReadAheadPipeline.DEFAULT_MAX_FILE_SIZE, ReadAheadPipeline.DEFAULT_BUFFER_SIZE);
+                pipeline.produce(producers, receiver);
+            } else {
+                for (DataProducer data : producers) {
+                    data.produce(receiver);
+                }
+            }
+        } catch (ProducerFileNotFoundException e) {
+            // Get the offending file name from the exception to check
+            // if it's a symlink.
+            if (Files.isSymbolicLink(Paths.get(e.getFilePath())) && ignoreBrokenLinks) {
+                console.info("Ignoring broken symlink " + e.getFilePath());
+            }
+            else {
+                finishedWithoutErrors = false;
+                throw e;
+            }
+        } catch (Exception e) {
+            finishedWithoutErrors = false;
+            throw e;
+        } finally {
+            if (!finishedWithoutErrors) {
+                receiver.abort();
+            } else if (segment) {
+                receiver.finishSegment();
+            } else {
+                receiver.finish();
+            }
+        }
+    }
 
-                createParentDirectories(dirEntry.getName(), dirEntry.getUserName(), dirEntry.getLongUserId(), dirEntry.getGroupName(), dirEntry.getLongGroupId());
+    /**
+     * Build the data archives of several packages from the provided DataProducers
+     * in a single pass. Every entry goes to the first archive whose route matches
+     * its path, a null route matching all the paths. The archives are written
+     * concurrently, each one by its own thread reading the files routed to it,
+     * unless the files are read ahead. The hard links to a file of another
+     * archive are written as copies.
+     *
+     * @param producers
+     * @param routes the patterns of the paths of each archive
+     * @param outputs the archives
+     * @param checksums the md5sums of each archive
+     * @param options Options used to build the data files
+     * @param ignoreBrokenLinks Whether to ignore broken symlinks in data directories
+     * @return the size of the data of each archive
+     */
+    BigInteger[] buildData(Collection<DataProducer> producers, final PatternMatcher[] routes, File[] outputs, StringBuilder[] checksums, TarOptions options, boolean ignoreBrokenLinks) throws NoSuchAlgorithmException, IOException, CompressorException {
 
-                // The directory passed in explicitly by the caller also gets the passed-in mode.  (Unlike
-                // the parent directories for now.  See related comments at "int mode =" in
-                // createParentDirectories, including about a possible bug.)
-                createDirectory(dirEntry.getName(), dirEntry.getUserName(), dirEntry.getLongUserId(), dirEntry.getGroupName(), dirEntry.getLongGroupId(), dirEntry.getMode(), 0);
+        final AsyncDataWriter[] writers = new AsyncDataWriter[outputs.length];
 
-                console.debug("dir: " + dirEntry.getName());
+        boolean finishedWithoutErrors = false;
+        try {
+            for (int i = 0; i < outputs.length; i++) {
+                writers[i] = new AsyncDataWriter(new DataWriter(outputs[i], false, checksums[i], options, new DirectoryIndex(), false), ignoreBrokenLinks);
             }
 
-            public void onEachFile(InputStream input, TarArchiveEntry fileEntry) throws IOException {
-                // Check link name
-                checkField(fileEntry.getLinkName(), TarConstants.NAMELEN);
-                // Check user name
-                checkField(fileEntry.getUserName(), TarConstants.UNAMELEN);
-                // Check group name
-                checkField(fileEntry.getGroupName(), TarConstants.GNAMELEN);
+            final DataConsumer router = new DataConsumer() {
+                public void onEachDir(TarArchiveEntry dirEntry) throws IOException {
+                    writers[route(routes, dirEntry.getName())].onEachDir(dirEntry);
+                }
+
+                public void onEachFile(InputStream input, TarArchiveEntry fileEntry) throws IOException {
+                    writers[route(routes, fileEntry.getName())].onEachFile(input, fileEntry);
+                }
 
-                // For md5sum
-                String rawFileEntryName = fileEntry.getName();
+                public void onEachLocalFile(File file, TarArchiveEntry fileEntry) throws IOException {
+                    writers[route(routes, fileEntry.getName())].onEachLocalFile(file, fileEntry);
+                }
 
-                fileEntry.setName(fixPathTar(fileEntry.getName()));
-                if (outputTimestampMs != null) {
-                    fileEntry.setModTime(outputTimestampMs);
+                public void onEachLink(TarArchiveEntry linkEntry) throws IOException {
+                    final int route = route(routes, linkEntry.getName());
+                    if (linkEntry.isLink() && route(routes, linkEntry.getLinkName()) != route) {
+                        throw new IOException("The hard link " + linkEntry.getName() + " and its target " + linkEntry.getLinkName() + " belong to different packages");
+                    }
+                    writers[route].onEachLink(linkEntry);
                 }
 
-                createParentDirectories(fileEntry.getName(), fileEntry.getUserName(), fileEntry.getLongUserId(), fileEntry.getGroupName(), fileEntry.getLongGroupId());
+                public void onEachLocalLink(TarArchiveEntry linkEntry, File file, TarArchiveEntry fileEntry) throws IOException {
+                    final int route = route(routes, linkEntry.getName());
+                    if (route(routes, linkEntry.getLinkName()) != route) {
+                        writers[route].onEachLocalFile(file, fileEntry);
+                    } else {
+                        writers[route].onEachLink(linkEntry);
+                    }
+                }
+            };
+
+            if (options.readAheadThreads() > 0) {
+                ReadAheadPipeline pipeline = new ReadAheadPipeline(options.readAheadThreads(), ReadAheadPipeline.DEFAULT_MAX_FILE_SIZE, ReadAheadPipeline.DEFAULT_BUFFER_SIZE);
+                pipeline.produce(producers, router);
+            } else {
+                for (DataProducer data : producers) {
+                    data.produce(router);
+                }
+            }
+            for (AsyncDataWriter writer : writers) {
+                writer.finish();
+            }
+            finishedWithoutErrors = true;
+        } finally {
+            if (!finishedWithoutErrors) {
+                for (AsyncDataWriter writer : writers) {
+                    if (writer != null) {
+                        writer.abort();
+                    }
+                }
+            }
+        }
+
+        final BigInteger[] sizes = new BigInteger[writers.length];
+        for (int i = 0; i < writers.length; i++) {
+            sizes[i] = writers[i].writer.dataSize.count;
+            console.debug("Total size of " + outputs[i].getName() + ": " + writers[i].writer.dataSize);
+        }
+        return sizes;
+    }
+
+    /**
+     * Returns the index of the first route matching the path, a null route
+     * matching all the paths. The last route is the default.
+     */
+    static int route(PatternMatcher[] routes, String name) {
+        String path = name.replace('\\', '/');
+        if (path.startsWith("./")) {
+            path = path.substring(2);
+        } else if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        for (int i = 0; i < routes.length; i++) {
+            if (routes[i] == null || routes[i].matches(path)) {
+                return i;
+            }
+        }
+        return routes.length - 1;
+    }
+
+    /**
+     * Consumer writing the entries to a data archive.
+     */
+    private final class DataWriter implements DataConsumer {
+
+        private final OutputStream compressedOutputStream;
+        private final TarArchiveOutputStream tarOutputStream;
+        private final StringBuilder checksums;
+        private final MessageDigest digest;
+        private final Total dataSize = new Total();
+        private final DirectoryIndex directories;
+        /** The minimum size of the files deduplicated, 0 if disabled */
+        private final long deduplicationThreshold;
+        /** Whether the scripts and binaries are made executable */
+        private final boolean detectExecutables;
+        /** Whether the line endings of the scripts are converted */
+        private final boolean fixScriptLineEndings;
+        /** The files written that can be the target of a hard link, by size */
+        private final Map<Long, List<WrittenFile>> writtenFiles = new HashMap<>();
+        /** The checksums of the files written by path, indexed once the first hard link is written */
+        private Map<String, String> fileChecksums;
+        // directory entries are written just before the next file or link, until
+        // then a directory created as a parent can still be declared explicitly
+        private final List<DirectoryIndex.Directory> pendingDirectories = new ArrayList<>();
+
+        /**
+         * @param append      whether the archive continues a segment already copied to the output
+         * @param directories the directories of the archive already written
+         * @param segment     whether only a segment of the archive is written
+         */
+        private DataWriter(File output, boolean append, StringBuilder checksums, TarOptions options, DirectoryIndex directories, boolean segment) throws NoSuchAlgorithmException, IOException, CompressorException {
+            final File dir = output.getParentFile();
+            if (dir != null && (!dir.exists() || !dir.isDirectory())) {
+                throw new IOException("Cannot write data file at '" + output.getAbsolutePath() + "'");
+            }
+
+            this.digest = MessageDigest.getInstance("MD5");
+            this.checksums = checksums;
+            this.directories = directories;
+            this.deduplicationThreshold = options.deduplicationThreshold();
+            this.detectExecutables = options.detectExecutables();
+            this.fixScriptLineEndings = options.fixScriptLineEndings();
+            this.compressedOutputStream = options.compression().toCompressedOutputStream(new FileOutputStream(output, append), options);
+            // a segment is written by blocks of the size of the tar records,
+            // nothing remains buffered at its end
+            this.tarOutputStream = segment
+                ? new TarArchiveOutputStream(compressedOutputStream, TarConstants.DEFAULT_RCDSIZE)
+                : new TarArchiveOutputStream(compressedOutputStream);
+            tarOutputStream.setLongFileMode(options.longFileMode());
+            tarOutputStream.setBigNumberMode(options.bigNumberMode());
+        }
+
+        /**
+         * Writes the remaining directories and closes the archive.
+         */
+        private void finish() throws IOException {
+            writeDirectories(tarOutputStream, pendingDirectories);
+            tarOutputStream.close();
+        }
+
+        /**
+         * Writes the remaining directories and closes the compressed stream,
+         * without the end of the tar archive. Closing the stream ends the gzip
+         * member or the zstd frame, the archive continuing the segment starts
+         * a new one.
+         */
+        private void finishSegment() throws IOException {
+            writeDirectories(tarOutputStream, pendingDirectories);
+            tarOutputStream.flush();
+            compressedOutputStream.close();
+        }
+
+        private void abort() {
+            IOUtils.closeQuietly(tarOutputStream);
+        }
+
+
+        public void onEachDir(TarArchiveEntry dirEntry) throws IOException {
+            // Check link name
+            checkField(dirEntry.getLinkName(), TarConstants.NAMELEN);
+            // Check user name
+            checkField(dirEntry.getUserName(), TarConstants.UNAMELEN);
+            // Check group name
+            checkField(dirEntry.getUserName(), TarConstants.GNAMELEN);
+
+            dirEntry.setName(fixPathTar(dirEntry.getName()));
+
+            createParentDirectories(dirEntry.getName(), dirEntry.getUserName(), dirEntry.getLongUserId(), dirEntry.getGroupName(), dirEntry.getLongGroupId());
+
+            // The directory passed in explicitly by the caller also gets the passed-in mode,
+            // even if it was already created as the parent of a previous entry.
+            createDirectory(dirEntry.getName(), dirEntry.getUserName(), dirEntry.getLongUserId(), dirEntry.getGroupName(), dirEntry.getLongGroupId(), dirEntry.getMode(), 0);
+
+            console.debug("dir: " + dirEntry.getName());
+        }
+
+        public void onEachFile(InputStream input, TarArchiveEntry fileEntry) throws IOException {
+            // Check link name
+            checkField(fileEntry.getLinkName(), TarConstants.NAMELEN);
+            // Check user name
+            checkField(fileEntry.getUserName(), TarConstants.UNAMELEN);
+            // Check group name
+            checkField(fileEntry.getGroupName(), TarConstants.GNAMELEN);
+
+            // For md5sum
+            String rawFileEntryName = fileEntry.getName();
+
+            fileEntry.setName(fixPathTar(fileEntry.getName()));
+            if (outputTimestampMs != null) {
+                fileEntry.setModTime(outputTimestampMs);
+            }
+
+            createParentDirectories(fileEntry.getName(), fileEntry.getUserName(), fileEntry.getLongUserId(), fileEntry.getGroupName(), fileEntry.getLongGroupId());
+            writeDirectories(tarOutputStream, pendingDirectories);
+
+            if (input == null || !(detectExecutables || fixScriptLineEndings)) {
+                writeFile(input, fileEntry, rawFileEntryName);
+                return;
+            }
+
+            // guess the type of the file from its first bytes, before its entry is written
+            if (!input.markSupported()) {
+                input = new BufferedInputStream(input);
+            }
+            final byte[] head = new byte[SNIFFED_SIZE];
+            input.mark(head.length);
+            final int length = IOUtils.read(input, head);
+            input.reset();
+            final ContentClassifier classifier = new ContentClassifier();
+            classifier.update(head, 0, length);
+
+            if (detectExecutables && (classifier.isShell() || classifier.isElf())) {
+                // executable by the users allowed to read it
+                fileEntry.setMode(fileEntry.getMode() | (fileEntry.getMode() & 0444) >> 2);
+            }
+
+            if (!fixScriptLineEndings || !classifier.isShell()) {
+                writeFile(input, fileEntry, rawFileEntryName);
+                return;
+            }
+
+            // the script is read as is first to find its line endings, it's only
+            // decoded and converted if it contains carriage returns
+            final DeferredFileOutputStream original = createBuffer();
+            final DeferredFileOutputStream converted = createBuffer();
+            try {
+                final ContentClassifier content = new ContentClassifier();
+                final byte[] chunk = new byte[8192];
+                int count;
+                while ((count = input.read(chunk)) != -1) {
+                    content.update(chunk, 0, count);
+                    original.write(chunk, 0, count);
+                }
+                original.close();
+
+                if (content.hasUnixLineEndings() || content.isBinary()) {
+                    writeBuffer(original, fileEntry, rawFileEntryName);
+                    return;
+                }
+
+                // the bytes are decoded one by one unless the script is in UTF-16
+                final Charset charset = classifier.getEncoding() != null ? Charset.forName(classifier.getEncoding()) : StandardCharsets.ISO_8859_1;
+                final CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+                try (Reader reader = new InputStreamReader(original.toInputStream(), decoder);
+                     Writer writer = new UnixLineEndingsWriter(new OutputStreamWriter(converted, charset))) {
+                    IOUtils.copy(reader, writer);
+                } catch (CharacterCodingException e) {
+                    console.warn("The script " + fileEntry.getName() + " isn't valid " + charset + ", its line endings are kept");
+                    writeBuffer(original, fileEntry, rawFileEntryName);
+                    return;
+                }
+
+                writeBuffer(converted, fileEntry, rawFileEntryName);
+            } finally {
+                deleteBuffer(original);
+                deleteBuffer(converted);
+            }
+        }
+
+        /**
+         * Writes a file from its content buffered.
+         */
+        private void writeBuffer(DeferredFileOutputStream buffer, TarArchiveEntry fileEntry, String rawFileEntryName) throws IOException {
+            fileEntry.setSize(buffer.getByteCount());
+            try (InputStream input = buffer.toInputStream()) {
+                writeFile(input, fileEntry, rawFileEntryName);
+            }
+        }
+
+        private DeferredFileOutputStream createBuffer() {
+            return DeferredFileOutputStream.builder()
+                .setThreshold(BUFFER_SIZE)
+                .setPrefix("jdeb")
+                .get();
+        }
+
+        private void deleteBuffer(DeferredFileOutputStream buffer) {
+            if (!buffer.isInMemory() && !buffer.getFile().delete()) {
+                console.warn("Could not delete the temporary file " + buffer.getFile());
+            }
+        }
+
+        /**
+         * Writes the entry and the content of a file, or a hard link to an
+         * identical file already written.
+         */
+        private void writeFile(InputStream input, TarArchiveEntry fileEntry, String rawFileEntryName) throws IOException {
+            final boolean deduplicated = deduplicationThreshold > 0 && fileEntry.getSize() >= deduplicationThreshold;
+            final List<WrittenFile> candidates = deduplicated ? writtenFiles.get(fileEntry.getSize()) : null;
+
+            String md5 = null;
+            DeferredFileOutputStream buffer = null;
+            InputStream bufferInput = null;
+            try {
+                if (candidates != null && input != null) {
+                    // a file of the same size was written, the content is digested
+                    // and kept aside before deciding how to write the entry
+                    buffer = createBuffer();
+                    digest.reset();
+                    Utils.copy(input, new DigestOutputStream(buffer, digest));
+                    buffer.close();
+                    md5 = Utils.toHex(digest.digest());
+
+                    for (WrittenFile original : candidates) {
+                        if (original.isCopy(fileEntry, md5)) {
+                            writeHardLink(fileEntry, original.name);
+                            appendChecksum(md5, fixPathMd5(rawFileEntryName));
+                            return;
+                        }
+                    }
+
+                    bufferInput = buffer.toInputStream();
+                    input = bufferInput;
+                }
 
                 tarOutputStream.putArchiveEntry(fileEntry);
 
                 dataSize.add(fileEntry.getSize());
-                digest.reset();
-
-                Utils.copy(input, new DigestOutputStream(tarOutputStream, digest));
 
-                final String md5 = Utils.toHex(digest.digest());
+                if (md5 == null) {
+                    digest.reset();
+                    Utils.copy(input, new DigestOutputStream(tarOutputStream, digest));
+                    md5 = Utils.toHex(digest.digest());
+                } else {
+                    Utils.copy(input, tarOutputStream);
+                }
 
                 tarOutputStream.closeArchiveEntry();
+            } finally {
+                if (buffer != null) {
+                    IOUtils.closeQuietly(bufferInput);
+                    deleteBuffer(buffer);
+                }
+            }
+
+            if (deduplicated) {
+                writtenFiles.computeIfAbsent(fileEntry.getSize(), size -> new ArrayList<>()).add(new WrittenFile(fileEntry, md5));
+            }
+
+            console.debug(
+                "file:" + fileEntry.getName() +
+                    " size:" + fileEntry.getSize() +
+                    " mode:" + fileEntry.getMode() +
+                    " linkname:" + fileEntry.getLinkName() +
+                    " username:" + fileEntry.getUserName() +
+                    " userid:" + fileEntry.getLongUserId() +
+                    " groupname:" + fileEntry.getGroupName() +
+                    " groupid:" + fileEntry.getLongGroupId() +
+                    " modtime:" + fileEntry.getModTime() +
+                    " md5: " + md5
+            );
+
+            // append to file md5 list, two spaces to be compatible with GNU coreutils md5sum
+            appendChecksum(md5, fixPathMd5(rawFileEntryName));
+        }
 
-                console.debug(
-                    "file:" + fileEntry.getName() +
-                        " size:" + fileEntry.getSize() +
-                        " mode:" + fileEntry.getMode() +
-                        " linkname:" + fileEntry.getLinkName() +
-                        " username:" + fileEntry.getUserName() +
-                        " userid:" + fileEntry.getLongUserId() +
-                        " groupname:" + fileEntry.getGroupName() +
-                        " groupid:" + fileEntry.getLongGroupId() +
-                        " modtime:" + fileEntry.getModTime() +
-                        " md5: " + md5
-                );
-
-                // append to file md5 list, two spaces to be compatible with GNU coreutils md5sum
-                checksums.append(md5).append("  ").append(fixPathMd5(rawFileEntryName)).append('\n');
-            }
-
-            public void onEachLink(TarArchiveEntry entry) throws IOException {
-                // Check user name
-                checkField(entry.getUserName(), TarConstants.UNAMELEN);
-                // Check group name
-                checkField(entry.getGroupName(), TarConstants.GNAMELEN);
-
-                entry.setName(fixPathTar(entry.getName()));
-                if (outputTimestampMs != null) {
-                    entry.setModTime(outputTimestampMs);
+        private void appendChecksum(String md5, String path) {
+            checksums.append(md5).append("  ").append(path).append('\n');
+            if (fileChecksums != null) {
+                fileChecksums.put(path, md5);
+            }
+        }
+
+        /**
+         * Returns the checksum of a file of the archive, or null if the file
+         * isn't in the archive.
+         */
+        private String getChecksum(String path) {
+            if (fileChecksums == null) {
+                // only needed by the hard links, indexed from the md5sums written so far
+                fileChecksums = new HashMap<>();
+                int start = 0;
+                while (start < checksums.length()) {
+                    int end = checksums.indexOf("\n", start);
+                    if (end < 0) {
+                        end = checksums.length();
+                    }
+                    // 32 hex digits and two spaces before the path
+                    if (end - start > 34) {
+                        fileChecksums.put(checksums.substring(start + 34, end), checksums.substring(start, start + 32));
+                    }
+                    start = end + 1;
                 }
+            }
+            return fileChecksums.get(path);
+        }
 
-                createParentDirectories(entry.getName(), entry.getUserName(), entry.getLongUserId(), entry.getGroupName(), entry.getLongGroupId());
+        /**
+         * Writes a hard link to a file of the archive with the same content,
+         * instead of the content of the file.
+         */
+        private void writeHardLink(TarArchiveEntry fileEntry, String target) throws IOException {
+            final TarArchiveEntry link = new TarArchiveEntry(fileEntry.getName(), TarConstants.LF_LINK);
+            link.setLinkName(target);
+            link.setMode(fileEntry.getMode());
+            link.setUserName(fileEntry.getUserName());
+            link.setUserId(fileEntry.getLongUserId());
+            link.setGroupName(fileEntry.getGroupName());
+            link.setGroupId(fileEntry.getLongGroupId());
+            link.setModTime(fileEntry.getModTime());
+
+            tarOutputStream.putArchiveEntry(link);
+            tarOutputStream.closeArchiveEntry();
+
+            console.debug("hardlink:" + link.getName() + " target:" + target + " size:" + fileEntry.getSize());
+        }
 
-                tarOutputStream.putArchiveEntry(entry);
-                tarOutputStream.closeArchiveEntry();
+        public void onEachLink(TarArchiveEntry entry) throws IOException {
+            // Check user name
+            checkField(entry.getUserName(), TarConstants.UNAMELEN);
+            // Check group name
+            checkField(entry.getGroupName(), TarConstants.GNAMELEN);
+
+            final String rawEntryName = entry.getName();
 
-                console.debug(
-                    "link:" + entry.getName() +
-                    " mode:" + entry.getMode() +
-                    " linkname:" + entry.getLinkName() +
-                    " username:" + entry.getUserName() +
-                    " userid:" + entry.getLongUserId() +
-                    " groupname:" + entry.getGroupName() +
-                    " groupid:" + entry.getLongGroupId()
-                 );
+            entry.setName(fixPathTar(entry.getName()));
+            if (entry.isLink()) {
+                // the target of a hard link is a path of the archive
+                entry.setLinkName(fixPathTar(entry.getLinkName()));
+            }
+            if (outputTimestampMs != null) {
+                entry.setModTime(outputTimestampMs);
             }
 
+            createParentDirectories(entry.getName(), entry.getUserName(), entry.getLongUserId(), entry.getGroupName(), entry.getLongGroupId());
+            writeDirectories(tarOutputStream, pendingDirectories);
 
-            private void createDirectory( String directory, String user, long uid, String group, long gid, int mode, long size ) throws IOException {
-                // All dirs should end with "/" when created, or the test DebAndTaskTestCase.testTarFileSet() thinks its a file
-                // and so thinks it has the wrong permission.
-                // This consistency also helps when checking if a directory already exists in addedDirectories.
+            tarOutputStream.putArchiveEntry(entry);
+            tarOutputStream.closeArchiveEntry();
 
-                if (!directory.endsWith("/")) {
-                    directory += "/";
+            if (entry.isLink()) {
+                // a hard link is a file of the package too
+                final String md5 = getChecksum(fixPathMd5(entry.getLinkName()));
+                if (md5 != null) {
+                    appendChecksum(md5, fixPathMd5(rawEntryName));
                 }
+            }
+
+            console.debug(
+                "link:" + entry.getName() +
+                " mode:" + entry.getMode() +
+                " linkname:" + entry.getLinkName() +
+                " username:" + entry.getUserName() +
+                " userid:" + entry.getLongUserId() +
+                " groupname:" + entry.getGroupName() +
+                " groupid:" + entry.getLongGroupId()
+             );
+        }
 
-                if (!addedDirectories.contains(directory)) {
-                    TarArchiveEntry entry = new TarArchiveEntry(directory, true);
-                    entry.setUserName(user);
-                    entry.setUserId(uid);
-                    entry.setGroupName(group);
-                    entry.setGroupId(gid);
-                    entry.setMode(mode);
-                    entry.setSize(size);
-
-                    if (outputTimestampMs != null) {
-                        entry.setModTime(outputTimestampMs);
-                    }
 
-                    tarOutputStream.putArchiveEntry(entry);
-                    tarOutputStream.closeArchiveEntry();
-                    addedDirectories.add(directory); // so addedDirectories consistently have "/" for finding duplicates.
+        private void createDirectory( String directory, String user, long uid, String group, long gid, int mode, long size ) throws IOException {
+            DirectoryIndex.Directory dir = directories.get(directory);
+
+            if (dir.entry == null) {
+                dir.entry = createDirectoryEntry(dir.getPath(), user, uid, group, gid, mode, size);
+                dir.explicit = true;
+                pendingDirectories.add(dir);
+            } else if (!dir.explicit) {
+                dir.explicit = true;
+                if (!dir.written) {
+                    // upgrade the directory previously created as a parent
+                    setDirectoryAttributes(dir.entry, user, uid, group, gid, mode);
+                } else if (dir.entry.getMode() != mode || dir.entry.getLongUserId() != uid || dir.entry.getLongGroupId() != gid
+                        || !Objects.equals(dir.entry.getUserName(), user) || !Objects.equals(dir.entry.getGroupName(), group)) {
+                    console.warn("The directory " + dir.getPath() + " was already added as the parent of a previous entry, its mode and ownership can't be changed");
                 }
             }
+        }
 
-            private void createParentDirectories( String filename, String user, long uid, String group, long gid ) throws IOException {
-                String dirname = fixPathTar(new File(filename).getParent());
+        private void createParentDirectories( String filename, String user, long uid, String group, long gid ) throws IOException {
+            String dirname = fixPathTar(new File(filename).getParent());
 
-                // Debian packages must have parent directories created
-                // before sub-directories or files can be installed.
-                // For example, if an entry of ./usr/lib/foo/bar existed
-                // in a .deb package, but the ./usr/lib/foo directory didn't
-                // exist, the package installation would fail.  The .deb must
-                // then have an entry for ./usr/lib/foo and then ./usr/lib/foo/bar
+            // Debian packages must have parent directories created
+            // before sub-directories or files can be installed.
+            // For example, if an entry of ./usr/lib/foo/bar existed
+            // in a .deb package, but the ./usr/lib/foo directory didn't
+            // exist, the package installation would fail.  The .deb must
+            // then have an entry for ./usr/lib/foo and then ./usr/lib/foo/bar
 
-                if (dirname == null) {
-                    return;
+            if (dirname == null) {
+                return;
+            }
+
+            // The loop below will create entries for all parent directories
+            // to ensure that .deb packages will install correctly.
+            DirectoryIndex.Directory dir = directories.root();
+            for (String part : dirname.split("/")) {
+                if (part.isEmpty() || ".".equals(part)) {
+                    continue;
                 }
 
-                // The loop below will create entries for all parent directories
-                // to ensure that .deb packages will install correctly.
-                String[] pathParts = dirname.split("/");
-                String parentDir = "./";
-                for (int i = 1; i < pathParts.length; i++) {
-                    parentDir += pathParts[i] + "/";
-                    // Make it so the dirs can be traversed by users.
-                    // We could instead try something more granular, like setting the directory
-                    // permission to 'rx' for each of the 3 user/group/other read permissions
-                    // found on the file being added (ie, only if "other" has read
-                    // permission on the main node, then add o+rx permission on all the containing
-                    // directories, same w/ user & group), and then also we'd have to
-                    // check the parentDirs collection of those already added to
-                    // see if those permissions need to be similarly updated.  (Note, it hasn't
-                    // been demonstrated, but there might be a bug if a user specifically
-                    // requests a directory with certain permissions,
-                    // that has already been auto-created because it was a parent, and if so, go set
-                    // the user-requested mode on that directory instead of this automatic one.)
-                    // But for now, keeping it simple by making every dir a+rx.   Examples are:
+                dir = dir.child(part);
+                if (dir.entry == null) {
+                    // Make it so the dirs can be traversed by users. A directory
+                    // declared explicitly later on gets its own mode instead,
+                    // as long as its entry hasn't been written yet.
                     // drw-r----- fs/fs   # what you get with setMode(mode)
                     // drwxr-xr-x fs/fs   # Usable. Too loose?
                     int mode = TarArchiveEntry.DEFAULT_DIR_MODE;
 
-                    createDirectory(parentDir, user, uid, group, gid, mode, 0);
+                    dir.entry = createDirectoryEntry(dir.getPath(), user, uid, group, gid, mode, 0);
+                    pendingDirectories.add(dir);
                 }
             }
-        };
+        }
+    }
 
-        boolean finishedWithoutErrors = true;
-        try {
-            for (DataProducer data : producers) {
-                data.produce(receiver);
+    /**
+     * A file written to the archive, identified by its content and its
+     * attributes shared with the hard links pointing to it.
+     */
+    private static final class WrittenFile {
+
+        private final String name;
+        private final String md5;
+        private final int mode;
+        private final long uid;
+        private final long gid;
+        private final String user;
+        private final String group;
+
+        private WrittenFile(TarArchiveEntry entry, String md5) {
+            this.name = entry.getName();
+            this.md5 = md5;
+            this.mode = entry.getMode();
+            this.uid = entry.getLongUserId();
+            this.gid = entry.getLongGroupId();
+            this.user = entry.getUserName();
+            this.group = entry.getGroupName();
+        }
+
+        /**
+         * Tells if the entry can be written as a hard link to this file.
+         */
+        private boolean isCopy(TarArchiveEntry entry, String md5) {
+            return this.md5.equals(md5) && mode == entry.getMode() && uid == entry.getLongUserId() && gid == entry.getLongGroupId()
+                && Objects.equals(user, entry.getUserName()) && Objects.equals(group, entry.getGroupName());
+        }
+    }
+
+    /**
+     * Consumer passing the entries to a DataWriter running on its own thread,
+     * in the order they were produced. The local files are read by the writer
+     * thread, the streams of the producers are handed over and the producer
+     * waits until they have been written.
+     */
+    private final class AsyncDataWriter implements DataConsumer {
+
+        private final DataWriter writer;
+        private final boolean ignoreBrokenLinks;
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jdeb-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        /** Bounds the number of entries waiting to be written */
+        private final Semaphore pending = new Semaphore(MAX_PENDING_ENTRIES);
+        /** The first failure of the writer thread, the following entries are skipped */
+        private volatile Exception failure;
+
+        private AsyncDataWriter(DataWriter writer, boolean ignoreBrokenLinks) {
+            this.writer = writer;
+            this.ignoreBrokenLinks = ignoreBrokenLinks;
+        }
+
+        private Future<?> submit(final Task task) throws IOException {
+            check();
+            try {
+                pending.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while producing the data");
             }
-        } catch (ProducerFileNotFoundException e) {
-            // Get the offending file name from the exception to check
-            // if it's a symlink.
-            if (Files.isSymbolicLink(Paths.get(e.getFilePath())) && ignoreBrokenLinks) {
-                console.info("Ignoring broken symlink " + e.getFilePath());
+            return executor.submit(() -> {
+                try {
+                    if (failure == null) {
+                        task.run();
+                    }
+                } catch (Exception e) {
+                    failure = e;
+                } finally {
+                    pending.release();
+                }
+            });
+        }
+
+        private void await(Future<?> future) throws IOException {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while building the data archive");
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
             }
-            else {
-                finishedWithoutErrors = false;
-                throw e;
+            check();
+        }
+
+        /**
+         * Rethrows the failure of the writer thread.
+         */
+        private void check() throws IOException {
+            final Exception e = failure;
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            } else if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else if (e != null) {
+                throw new IOException(e);
             }
-        } catch (Exception e) {
-            finishedWithoutErrors = false;
-            throw e;
-        } finally {
-            if (finishedWithoutErrors) {
-                tarOutputStream.close();
-            } else {
-                IOUtils.closeQuietly(tarOutputStream);
+        }
+
+        public void onEachDir(final TarArchiveEntry dirEntry) throws IOException {
+            submit(() -> writer.onEachDir(dirEntry));
+        }
+
+        public void onEachFile(final InputStream input, final TarArchiveEntry fileEntry) throws IOException {
+            await(submit(() -> writer.onEachFile(input, fileEntry)));
+        }
+
+        public void onEachLocalFile(final File file, final TarArchiveEntry fileEntry) throws IOException {
+            submit(() -> {
+                try {
+                    writer.onEachLocalFile(file, fileEntry);
+                } catch (ProducerFileNotFoundException e) {
+                    if (ignoreBrokenLinks && Files.isSymbolicLink(Paths.get(e.getFilePath()))) {
+                        console.info("Ignoring broken symlink " + e.getFilePath());
+                    } else {
+                        throw e;
+                    }
+                }
+            });
+        }
+
+        public void onEachLink(final TarArchiveEntry linkEntry) throws IOException {
+            submit(() -> writer.onEachLink(linkEntry));
+        }
+
+        /**
+         * Waits until all the entries are written and closes the archive.
+         */
+        private void finish() throws IOException {
+            await(submit(writer::finish));
+            executor.shutdown();
+        }
+
+        private void abort() {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+            writer.abort();
+        }
+    }
+
+    /** An entry to write, run by the writer thread */
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private TarArchiveEntry createDirectoryEntry( String directory, String user, long uid, String group, long gid, int mode, long size ) {
+        // All dirs should end with "/" when created, or the test DebAndTaskTestCase.testTarFileSet() thinks its a file
+        // and so thinks it has the wrong permission.
+        TarArchiveEntry entry = new TarArchiveEntry(directory, true);
+        setDirectoryAttributes(entry, user, uid, group, gid, mode);
+        entry.setSize(size);
+
+        if (outputTimestampMs != null) {
+            entry.setModTime(outputTimestampMs);
         }
 
-        console.debug("Total size: " + dataSize);
+        return entry;
+    }
+
+    private void setDirectoryAttributes( TarArchiveEntry entry, String user, long uid, String group, long gid, int mode ) {
+        entry.setUserName(user);
+        entry.setUserId(uid);
+        entry.setGroupName(group);
+        entry.setGroupId(gid);
+        entry.setMode(mode);
+    }
 
-        return dataSize.count;
+    /**
+     * Writes the pending directory entries in the order they were added.
+     */
+    private void writeDirectories( TarArchiveOutputStream tarOutputStream, List<DirectoryIndex.Directory> pending ) throws IOException {
+        for (DirectoryIndex.Directory dir : pending) {
+            tarOutputStream.putArchiveEntry(dir.entry);
+            tarOutputStream.closeArchiveEntry();
+            dir.written = true;
+        }
+        pending.clear();
     }
 
     private String fixPathBase( String path ) {
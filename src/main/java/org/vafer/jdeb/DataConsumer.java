@@ -16,7 +16,11 @@
 package org.vafer.jdeb;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.IOUtils;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -29,6 +33,43 @@ public interface DataConsumer {
 
     void onEachFile( InputStream input, TarArchiveEntry fileEntry ) throws IOException;
 
+    /**
+     * Consumes a file of the file system. The file is opened and passed to
+     * {@link #onEachFile(InputStream, TarArchiveEntry)} by default, consumers
+     * may override this method to read it later or from another thread.
+     *
+     * @throws ProducerFileNotFoundException if the file can't be opened
+     */
+    default void onEachLocalFile( File file, TarArchiveEntry fileEntry ) throws IOException {
+        InputStream input;
+        try {
+            input = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            ProducerFileNotFoundException pe = new ProducerFileNotFoundException(e.getMessage(), e);
+            pe.setFilePath(file.getAbsolutePath());
+            throw pe;
+        }
+        try {
+            onEachFile(input, fileEntry);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
     void onEachLink( TarArchiveEntry linkEntry ) throws IOException;
 
+    /**
+     * Consumes a hard link to a file of the file system whose first path was
+     * already consumed. The link is passed to {@link #onEachLink(TarArchiveEntry)}
+     * by default, consumers unable to keep the link may consume the file
+     * instead, with the entry of the link.
+     *
+     * @param linkEntry the hard link
+     * @param file the linked file
+     * @param fileEntry the entry of the file at the path of the link
+     */
+    default void onEachLocalLink( TarArchiveEntry linkEntry, File file, TarArchiveEntry fileEntry ) throws IOException {
+        onEachLink(linkEntry);
+    }
+
 }
@@ -24,4 +24,12 @@ public interface DataProducer {
 
     void produce( DataConsumer receiver ) throws IOException;
 
+    /**
+     * Produces the entries without their content. The files are passed to
+     * the receiver with a null stream, they aren't opened or read.
+     */
+    default void produceMetadata( DataConsumer receiver ) throws IOException {
+        produce(new MetadataConsumer(receiver));
+    }
+
 }
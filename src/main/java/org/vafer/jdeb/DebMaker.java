@@ -19,32 +19,38 @@ package org.vafer.jdeb;
 import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
 import org.apache.commons.compress.archivers.ar.ArArchiveOutputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
-import org.bouncycastle.crypto.digests.MD5Digest;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPSignature;
 import org.bouncycastle.openpgp.PGPSignatureGenerator;
 import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
-import org.bouncycastle.util.encoders.Hex;
 import org.vafer.jdeb.changes.ChangeSet;
 import org.vafer.jdeb.changes.ChangesProvider;
 import org.vafer.jdeb.changes.TextfileChangesProvider;
 import org.vafer.jdeb.debian.BinaryPackageControlFile;
 import org.vafer.jdeb.debian.ChangesFile;
+import org.vafer.jdeb.signing.PGPKeyCache;
 import org.vafer.jdeb.signing.PGPSigner;
+import org.vafer.jdeb.utils.AsyncDigestOutputStream;
 import org.vafer.jdeb.utils.FilteredFile;
+import org.vafer.jdeb.utils.InformationOutputStream;
 import org.vafer.jdeb.utils.PGPSignatureOutputStream;
+import org.vafer.jdeb.utils.PatternMatcher;
 import org.vafer.jdeb.utils.Utils;
 import org.vafer.jdeb.utils.VariableResolver;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -115,9 +121,39 @@ public class DebMaker {
     /** Enable the creation of the changes file */
     private boolean changesEnabled;
 
-    /** The compression method used for the data file (none, gzip, bzip2 or xz) */
+    /** The checksums of the package computed while it was written, listed in the changes file */
+    private ChangesFileBuilder.PackageChecksums debChecksums;
+
+    /** The compression method used for the data file (none, gzip, bzip2, xz or zstd) */
     private String compression = "gzip";
 
+    /** The compression method used for the control file (none, gzip, xz or zstd) */
+    private String controlCompression = "gzip";
+
+    /** The compression level, the default of the compression method if not set */
+    private Integer compressionLevel;
+
+    /** The number of threads used to compress the data file */
+    private int compressionThreads = 1;
+
+    /** The size of the blocks compressed in parallel with gzip, 0 for the default */
+    private int compressionBlockSize;
+
+    /** The size of the blocks compressed in parallel with xz, 0 for the default of the preset */
+    private int xzBlockSize;
+
+    /** The number of threads reading the files ahead of the data archive, 0 to disable */
+    private int readAheadThreads;
+
+    /** The minimum size of the files with the same content written as hard links, 0 to disable */
+    private long deduplicationThreshold;
+
+    /** Whether the shell scripts and the ELF binaries of the data are made executable */
+    private boolean detectExecutables;
+
+    /** Whether the line endings of the shell scripts of the data are converted to Unix line endings */
+    private boolean fixScriptLineEndings;
+
     /** Whether to sign the package that is created */
     private boolean signPackage;
 
@@ -151,6 +187,12 @@ public class DebMaker {
     private final Collection<DataProducer> dataProducers = new ArrayList<>();
 
     private final Collection<DataProducer> conffilesProducers = new ArrayList<>();
+
+    /** The packages split from the data of the main package */
+    private final List<SplitPackage> splitPackages = new ArrayList<>();
+
+    /** The packages built for several architectures instead of the main package */
+    private final List<ArchitecturePackage> architecturePackages = new ArrayList<>();
     private String digest = "SHA256";
 
     public DebMaker(Console console, Collection<DataProducer> dataProducers, Collection<DataProducer> conffileProducers) {
@@ -262,6 +304,59 @@ public class DebMaker {
         this.compression = compression;
     }
 
+    public void setControlCompression(String controlCompression) {
+        this.controlCompression = controlCompression;
+    }
+
+    public void setCompressionLevel(Integer compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    public void setCompressionBlockSize(int compressionBlockSize) {
+        this.compressionBlockSize = compressionBlockSize;
+    }
+
+    public void setXzBlockSize(int xzBlockSize) {
+        this.xzBlockSize = xzBlockSize;
+    }
+
+    public void setReadAheadThreads(int readAheadThreads) {
+        this.readAheadThreads = readAheadThreads;
+    }
+
+    public void setDeduplicationThreshold(long deduplicationThreshold) {
+        this.deduplicationThreshold = deduplicationThreshold;
+    }
+
+    public void setDetectExecutables(boolean detectExecutables) {
+        this.detectExecutables = detectExecutables;
+    }
+
+    public void setFixScriptLineEndings(boolean fixScriptLineEndings) {
+        this.fixScriptLineEndings = fixScriptLineEndings;
+    }
+
+    /**
+     * Adds a package built from the files of the data matching its include
+     * patterns, these files are removed from the main package.
+     */
+    public void addSplitPackage(SplitPackage splitPackage) {
+        this.splitPackages.add(splitPackage);
+    }
+
+    /**
+     * Adds a package built for an architecture instead of the main package.
+     * The data producers of the maker are shared by all the architectures,
+     * their data is compressed only once if the compression method allows it.
+     */
+    public void addArchitecturePackage(ArchitecturePackage architecturePackage) {
+        this.architecturePackages.add(architecturePackage);
+    }
+
     public void setResolver(VariableResolver variableResolver) {
         this.variableResolver = variableResolver;
     }
@@ -324,21 +419,86 @@ public class DebMaker {
             }
         }
 
-        if (Compression.toEnum(compression) == null) {
-            throw new PackagingException("The compression method '" + compression + "' is not supported (expected 'none', 'gzip', 'bzip2' or 'xz')");
+        Compression compressionMethod = Compression.toEnum(compression);
+        if (compressionMethod == null) {
+            throw new PackagingException("The compression method '" + compression + "' is not supported (expected 'none', 'gzip', 'bzip2', 'xz' or 'zstd')");
+        }
+
+        if (compressionLevel != null && compressionMethod != Compression.NONE
+                && (compressionLevel < compressionMethod.getMinimumLevel() || compressionLevel > compressionMethod.getMaximumLevel())) {
+            throw new PackagingException("The compression level of " + compression + " must be between " + compressionMethod.getMinimumLevel()
+                    + " and " + compressionMethod.getMaximumLevel() + " (was " + compressionLevel + ")");
+        }
+
+        Compression controlCompressionMethod = Compression.toEnum(controlCompression);
+        if (controlCompressionMethod == null || controlCompressionMethod == Compression.BZIP2) {
+            throw new PackagingException("The control compression method '" + controlCompression + "' is not supported (expected 'none', 'gzip', 'xz' or 'zstd')");
         }
 
-        if (deb == null) {
+        if (compressionThreads < 1) {
+            throw new PackagingException("The number of compression threads must be at least 1 (was " + compressionThreads + ")");
+        }
+
+        if (readAheadThreads < 0) {
+            throw new PackagingException("The number of read-ahead threads must not be negative (was " + readAheadThreads + ")");
+        }
+
+        if (deduplicationThreshold < 0) {
+            throw new PackagingException("The deduplication threshold must not be negative (was " + deduplicationThreshold + ")");
+        }
+
+        if (compressionBlockSize < 0) {
+            throw new PackagingException("The compression block size must not be negative (was " + compressionBlockSize + ")");
+        }
+
+        if (xzBlockSize < 0) {
+            throw new PackagingException("The xz block size must not be negative (was " + xzBlockSize + ")");
+        }
+
+        if (deb == null && architecturePackages.isEmpty()) {
             throw new PackagingException("You need to specify where the deb file is supposed to be created.");
         }
 
+        if (!architecturePackages.isEmpty() && !splitPackages.isEmpty()) {
+            throw new PackagingException("The split packages can't be built for several architectures");
+        }
+
+        for (ArchitecturePackage architecturePackage : architecturePackages) {
+            if (architecturePackage.getArchitecture() == null || architecturePackage.getArchitecture().isEmpty()) {
+                throw new PackagingException("You need to specify the architecture of the package " + architecturePackage.getDeb());
+            }
+            if (architecturePackage.getDeb() == null) {
+                throw new PackagingException("You need to specify where the deb file for the architecture " + architecturePackage.getArchitecture() + " is supposed to be created.");
+            }
+        }
+
+        for (SplitPackage splitPackage : splitPackages) {
+            if (splitPackage.getDeb() == null) {
+                throw new PackagingException("You need to specify where the deb file of the split package is supposed to be created.");
+            }
+            if (splitPackage.getControl() == null || !splitPackage.getControl().isDirectory()) {
+                throw new PackagingException("The control directory of the split package " + splitPackage.getDeb() + " doesn't point to a directory. " + splitPackage.getControl());
+            }
+            if (splitPackage.getIncludes() == null || splitPackage.getIncludes().length == 0) {
+                throw new PackagingException("The split package " + splitPackage.getDeb() + " has no include patterns");
+            }
+        }
+
         PGPSigner.getDigestCode(digest);
     }
 
     public void makeDeb() throws PackagingException {
         BinaryPackageControlFile packageControlFile;
         try {
-            console.info("Creating debian package: " + deb);
+            if (architecturePackages.isEmpty()) {
+                console.info("Creating debian package: " + deb);
+            }
+            for (ArchitecturePackage architecturePackage : architecturePackages) {
+                console.info("Creating debian package: " + architecturePackage.getDeb());
+            }
+            for (SplitPackage splitPackage : splitPackages) {
+                console.info("Creating debian package: " + splitPackage.getDeb());
+            }
 
             // If we should sign the package
             if (signPackage) {
@@ -357,13 +517,9 @@ public class DebMaker {
 
                 final int digestCode = PGPSigner.getDigestCode(signDigest);
 
-                PGPSigner signer;
-                try (FileInputStream keyRingInput = new FileInputStream(keyring)) {
-                    signer = new PGPSigner(keyRingInput, key, passphrase, digestCode);
-                }
+                PGPSigner signer = PGPKeyCache.getSigner(keyring, key, passphrase, digestCode);
 
-                PGPSignatureGenerator signatureGenerator = new PGPSignatureGenerator(new BcPGPContentSignerBuilder(signer.getSecretKey().getPublicKey().getAlgorithm(), digestCode));
-                signatureGenerator.init(PGPSignature.BINARY_DOCUMENT, signer.getPrivateKey());
+                PGPSignatureGenerator signatureGenerator = createSignatureGenerator(signer, digestCode);
 
                 packageControlFile = createSignedDeb(Compression.toEnum(compression), signatureGenerator, signer);
             } else {
@@ -376,7 +532,11 @@ public class DebMaker {
 
         if(changesEnabled)
         {
-            makeChangesFiles(packageControlFile);
+            if (architecturePackages.isEmpty()) {
+                makeChangesFiles(packageControlFile);
+            } else {
+                console.info("The changes file isn't created for the packages of several architectures");
+            }
         }
     }
 
@@ -412,14 +572,14 @@ public class DebMaker {
             }
 
             ChangesFileBuilder builder = new ChangesFileBuilder(outputTimestampMs);
-            ChangesFile changesFile = builder.createChanges(packageControlFile, deb, changesProvider);
+            ChangesFile changesFile = builder.createChanges(packageControlFile, deb, debChecksums, changesProvider);
 
             final int digestCode = PGPSigner.getDigestCode(signDigest);
 
             // (signChanges || signPackage) - for backward compatibility. signPackage is signing both changes and deb.
             if ((signChanges || signPackage) && keyring != null && key != null && passphrase != null) {
                 console.info("Signing the changes file with the key " + key);
-                PGPSigner signer = new PGPSigner(new FileInputStream(keyring), key, passphrase, digestCode);
+                PGPSigner signer = PGPKeyCache.getSigner(keyring, key, passphrase, digestCode);
                 signer.clearSign(changesFile.toString(), out);
             } else {
                 out.write(changesFile.toString().getBytes(StandardCharsets.UTF_8));
@@ -446,15 +606,25 @@ public class DebMaker {
         }
     }
 
-    private List<String> populateConffiles(Collection<DataProducer> producers) {
-        final List<String> result = new ArrayList<>();
+    /**
+     * Returns the consumer adding the names of the files and hard links received to the list of conffiles.
+     */
+    private DataConsumer createConffilesConsumer(final List<String> conffiles) {
+        return new DataConsumer() {
+            public void onEachFile(InputStream input, TarArchiveEntry entry)  {
+                addConffile(entry);
+            }
+
+            public void onEachLink(TarArchiveEntry entry)  {
+                if (entry.isLink()) {
+                    addConffile(entry);
+                }
+            }
 
-        if (producers == null || producers.isEmpty()) {
-            return result;
-        }
+            public void onEachDir(TarArchiveEntry tarArchiveEntry)  {
+            }
 
-        final DataConsumer receiver = new DataConsumer() {
-            public void onEachFile(InputStream input, TarArchiveEntry entry)  {
+            private void addConffile(TarArchiveEntry entry) {
                 String tempConffileItem = entry.getName();
 
                 // Make sure the conffile path is absolute
@@ -466,25 +636,87 @@ public class DebMaker {
                 }
 
                 console.info("Adding conffile: " + tempConffileItem);
-                result.add(tempConffileItem);
+                conffiles.add(tempConffileItem);
             }
+        };
+    }
 
-            public void onEachLink(TarArchiveEntry entry)  {
-            }
+    /**
+     * Returns the data producers, the ones also producing conffiles are
+     * wrapped to collect the conffiles while the data archive is built.
+     */
+    private Collection<DataProducer> collectConffiles(final Collection<DataProducer> dataProducers, final List<String> conffiles) {
+        if (conffilesProducers == null || conffilesProducers.isEmpty()) {
+            return dataProducers;
+        }
 
-            public void onEachDir(TarArchiveEntry tarArchiveEntry)  {
+        final DataConsumer collector = createConffilesConsumer(conffiles);
+
+        final List<DataProducer> producers = new ArrayList<>(dataProducers.size());
+        for (final DataProducer producer : dataProducers) {
+            if (!containsProducer(conffilesProducers, producer)) {
+                producers.add(producer);
+                continue;
             }
-        };
+
+            producers.add(receiver -> producer.produce(new DataConsumer() {
+                public void onEachDir(TarArchiveEntry dirEntry) throws IOException {
+                    receiver.onEachDir(dirEntry);
+                }
+
+                public void onEachFile(InputStream input, TarArchiveEntry fileEntry) throws IOException {
+                    collector.onEachFile(null, fileEntry);
+                    receiver.onEachFile(input, fileEntry);
+                }
+
+                public void onEachLocalFile(File file, TarArchiveEntry fileEntry) throws IOException {
+                    collector.onEachFile(null, fileEntry);
+                    receiver.onEachLocalFile(file, fileEntry);
+                }
+
+                public void onEachLink(TarArchiveEntry linkEntry) throws IOException {
+                    collector.onEachLink(linkEntry);
+                    receiver.onEachLink(linkEntry);
+                }
+
+                public void onEachLocalLink(TarArchiveEntry linkEntry, File file, TarArchiveEntry fileEntry) throws IOException {
+                    collector.onEachLink(linkEntry);
+                    receiver.onEachLocalLink(linkEntry, file, fileEntry);
+                }
+            }));
+        }
+        return producers;
+    }
+
+    /**
+     * Adds the conffiles of the producers that aren't part of the data
+     * archive. Only the names of their entries are read.
+     */
+    private void populateConffiles(final Collection<DataProducer> dataProducers, final List<String> conffiles) {
+        if (conffilesProducers == null || conffilesProducers.isEmpty()) {
+            return;
+        }
+
+        final DataConsumer receiver = createConffilesConsumer(conffiles);
 
         try {
-            for (DataProducer data : producers) {
-                data.produce(receiver);
+            for (DataProducer data : conffilesProducers) {
+                if (!containsProducer(dataProducers, data)) {
+                    data.produceMetadata(receiver);
+                }
             }
         } catch(Exception e) {
             //
         }
+    }
 
-        return result;
+    private static boolean containsProducer(Collection<DataProducer> producers, DataProducer producer) {
+        for (DataProducer p : producers) {
+            if (p == producer) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -507,28 +739,173 @@ public class DebMaker {
      * @throws PackagingException
      */
     public BinaryPackageControlFile createSignedDeb(Compression compression, final PGPSignatureGenerator signatureGenerator, PGPSigner signer ) throws PackagingException {
-        File tempData = null;
-        File tempControl = null;
+        if (!architecturePackages.isEmpty()) {
+            return createArchitectureDebs(compression, signatureGenerator, signer);
+        }
+
+        // the data archives have to be spooled, the control archive placed
+        // before it in the package depends on its checksums and size
+        final File[] tempData = new File[splitPackages.size() + 1];
 
         try {
-            tempData = File.createTempFile("deb", "data");
-            tempControl = File.createTempFile("deb", "control");
+            for (int i = 0; i < tempData.length; i++) {
+                tempData[i] = File.createTempFile("deb", "data");
+            }
 
             console.debug("Building data");
             DataBuilder dataBuilder = new DataBuilder(console, outputTimestampMs);
-            StringBuilder md5s = new StringBuilder();
-            TarOptions options = new TarOptions()
-                .compression(compression)
-                .longFileMode(tarLongFileMode)
-                .bigNumberMode(tarBigNumberMode);
-            BigInteger size = dataBuilder.buildData(dataProducers, tempData, md5s, options, ignoreBrokenLinks);
+            TarOptions options = createTarOptions(compression);
+            List<String> tempConffiles = new ArrayList<>();
+
+            // the split packages come first, the main package gets the remaining files
+            final PatternMatcher[] routes = new PatternMatcher[tempData.length];
+            final StringBuilder[] md5s = new StringBuilder[tempData.length];
+            final BigInteger[] sizes;
+            for (int i = 0; i < tempData.length; i++) {
+                md5s[i] = new StringBuilder();
+                routes[i] = i < splitPackages.size() ? splitPackages.get(i).getMatcher() : null;
+            }
+            if (splitPackages.isEmpty()) {
+                sizes = new BigInteger[] { dataBuilder.buildData(collectConffiles(dataProducers, tempConffiles), tempData[0], md5s[0], options, ignoreBrokenLinks) };
+            } else {
+                sizes = dataBuilder.buildData(collectConffiles(dataProducers, tempConffiles), routes, tempData, md5s, options, ignoreBrokenLinks);
+            }
 
             console.info("Building conffiles");
-            List<String> tempConffiles = populateConffiles(conffilesProducers);
+            populateConffiles(dataProducers, tempConffiles);
+
+            final List<List<String>> conffiles = new ArrayList<>();
+            for (int i = 0; i < tempData.length; i++) {
+                conffiles.add(new ArrayList<>());
+            }
+            for (String conffile : tempConffiles) {
+                conffiles.get(DataBuilder.route(routes, conffile)).add(conffile);
+            }
+
+            for (int i = 0; i < splitPackages.size(); i++) {
+                final SplitPackage splitPackage = splitPackages.get(i);
+                console.info("Assembling debian package " + splitPackage.getDeb());
+                PGPSignatureGenerator splitSignatureGenerator = null;
+                if (signatureGenerator != null && signer != null) {
+                    splitSignatureGenerator = createSignatureGenerator(signer, PGPSigner.getDigestCode(signDigest));
+                }
+                createPackage(splitPackage.getDeb(), splitPackage.getControl(), false, false, null, sizes[i], conffiles.get(i), md5s[i], tempData[i], compression, splitSignatureGenerator, signer);
+            }
 
-            console.debug("Building control");
-            ControlBuilder controlBuilder = new ControlBuilder(console, variableResolver, openReplaceToken, closeReplaceToken, outputTimestampMs);
-            BinaryPackageControlFile packageControlFile = controlBuilder.createPackageControlFile(new File(control, "control"), size, encoding, openReplaceToken, closeReplaceToken);
+            final int main = tempData.length - 1;
+            return createPackage(deb, control, true, true, null, sizes[main], conffiles.get(main), md5s[main], tempData[main], compression, signatureGenerator, signer);
+
+        } catch (Exception e) {
+            throw new PackagingException("Could not create deb package", e);
+        } finally {
+            for (File file : tempData) {
+                if (file != null && !file.delete()) {
+                    console.warn("Could not delete the temporary file " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the debian archives of the architectures, sharing the data
+     * common to all the architectures.
+     *
+     * @return the control file of the first architecture
+     */
+    private BinaryPackageControlFile createArchitectureDebs(Compression compression, final PGPSignatureGenerator signatureGenerator, PGPSigner signer) throws PackagingException {
+        File segmentData = null;
+
+        try {
+            DataBuilder dataBuilder = new DataBuilder(console, outputTimestampMs);
+            TarOptions options = createTarOptions(compression);
+
+            // the shared data is compressed once and copied at the beginning of each data archive
+            List<String> sharedConffiles = new ArrayList<>();
+            DataBuilder.Segment segment = null;
+            if (compression.isConcatenable()) {
+                console.debug("Building the data shared by the architectures");
+                segmentData = File.createTempFile("deb", "segment");
+                segment = dataBuilder.buildSegment(collectConffiles(dataProducers, sharedConffiles), segmentData, options, ignoreBrokenLinks);
+            } else {
+                console.info("The data shared by the architectures is compressed for each one, the " + compression + " compression can't be concatenated");
+            }
+
+            BinaryPackageControlFile first = null;
+            for (ArchitecturePackage architecturePackage : architecturePackages) {
+                final List<DataProducer> producers = new ArrayList<>(dataProducers);
+                producers.addAll(architecturePackage.getDataProducers());
+
+                File tempData = null;
+                try {
+                    tempData = File.createTempFile("deb", "data");
+
+                    console.debug("Building data for " + architecturePackage.getArchitecture());
+                    List<String> tempConffiles = new ArrayList<>(sharedConffiles);
+                    StringBuilder md5s = new StringBuilder();
+                    BigInteger size;
+                    if (segment != null) {
+                        size = dataBuilder.buildData(collectConffiles(architecturePackage.getDataProducers(), tempConffiles), segment, tempData, md5s, options, ignoreBrokenLinks);
+                    } else {
+                        size = dataBuilder.buildData(collectConffiles(producers, tempConffiles), tempData, md5s, options, ignoreBrokenLinks);
+                    }
+                    populateConffiles(producers, tempConffiles);
+
+                    PGPSignatureGenerator architectureSignatureGenerator = signatureGenerator;
+                    if (first != null && signatureGenerator != null && signer != null) {
+                        architectureSignatureGenerator = createSignatureGenerator(signer, PGPSigner.getDigestCode(signDigest));
+                    }
+
+                    BinaryPackageControlFile packageControlFile = createPackage(architecturePackage.getDeb(), control, true, false, architecturePackage.getArchitecture(), size, tempConffiles, md5s, tempData, compression, architectureSignatureGenerator, signer);
+                    if (first == null) {
+                        first = packageControlFile;
+                    }
+                } finally {
+                    if (tempData != null && !tempData.delete()) {
+                        console.warn("Could not delete the temporary file " + tempData);
+                    }
+                }
+            }
+
+            return first;
+
+        } catch (Exception e) {
+            throw new PackagingException("Could not create deb package", e);
+        } finally {
+            if (segmentData != null && !segmentData.delete()) {
+                console.warn("Could not delete the temporary file " + segmentData);
+            }
+        }
+    }
+
+    private TarOptions createTarOptions(Compression compression) {
+        return new TarOptions()
+            .compression(compression)
+            .longFileMode(tarLongFileMode)
+            .bigNumberMode(tarBigNumberMode)
+            .compressionLevel(compressionLevel)
+            .compressionThreads(compressionThreads)
+            .compressionBlockSize(compressionBlockSize)
+            .xzBlockSize(xzBlockSize)
+            .readAheadThreads(readAheadThreads)
+            .deduplicationThreshold(deduplicationThreshold)
+            .detectExecutables(detectExecutables)
+            .fixScriptLineEndings(fixScriptLineEndings);
+    }
+
+    /**
+     * Assembles a package from its control files and its data archive.
+     *
+     * @param main whether the defaults of the maker apply to the control file
+     * @param changes whether the package is described by the changes file
+     * @param architecture the architecture replacing the one of the control file, or null
+     */
+    private BinaryPackageControlFile createPackage(File deb, File control, boolean main, boolean changes, String architecture, BigInteger size, List<String> conffiles, StringBuilder md5s, File tempData,
+                                                   Compression compression, PGPSignatureGenerator signatureGenerator, PGPSigner signer) throws Exception {
+        console.debug("Building control");
+        Compression controlCompressionMethod = Compression.toEnum(controlCompression);
+        ControlBuilder controlBuilder = new ControlBuilder(console, variableResolver, openReplaceToken, closeReplaceToken, outputTimestampMs);
+        BinaryPackageControlFile packageControlFile = controlBuilder.createPackageControlFile(new File(control, "control"), size, encoding, openReplaceToken, closeReplaceToken);
+        if (main) {
             if (packageControlFile.get("Package") == null) {
                 packageControlFile.set("Package", packageName);
             }
@@ -547,43 +924,69 @@ public class DebMaker {
             if (packageControlFile.get("Homepage") == null) {
                 packageControlFile.set("Homepage", homepage);
             }
+        }
+        if (architecture != null) {
+            packageControlFile.set("Architecture", architecture);
+        }
 
-            controlBuilder.buildControl(packageControlFile, control.listFiles(), tempConffiles , md5s, tempControl, encoding);
+        // the control archive is small enough to be kept in memory, the level only applies to the method of the data archive
+        TarOptions controlOptions = new TarOptions()
+            .compression(controlCompressionMethod)
+            .compressionLevel(controlCompressionMethod == compression ? compressionLevel : null);
+        ByteArrayOutputStream controlArchive = new ByteArrayOutputStream();
+        controlBuilder.buildControl(packageControlFile, control.listFiles(), conffiles, md5s, controlArchive, encoding, controlOptions);
+        byte[] controlContent = controlArchive.toByteArray();
+
+        if (!packageControlFile.isValid()) {
+            throw new PackagingException("Control file fields are invalid " + packageControlFile.invalidFields() +
+                    ". The following fields are mandatory: " + packageControlFile.getMandatoryFields() +
+                    ". Please check your pom.xml/build.xml and your control file.");
+        }
 
-            if (!packageControlFile.isValid()) {
-                throw new PackagingException("Control file fields are invalid " + packageControlFile.invalidFields() +
-                        ". The following fields are mandatory: " + packageControlFile.getMandatoryFields() +
-                        ". Please check your pom.xml/build.xml and your control file.");
-            }
+        deb.getParentFile().mkdirs();
 
-            deb.getParentFile().mkdirs();
+        String binaryName = "debian-binary";
+        String binaryContent = "2.0\n";
+        String controlName = "control.tar" + controlCompressionMethod.getExtension();
+        String dataName = "data.tar" + compression.getExtension();
 
-            ArArchiveOutputStream ar = new ArArchiveOutputStream(new FileOutputStream(deb));
+        if (signatureGenerator != null && signRole == null) {
+            signRole = "origin";
+        }
+
+        // Use debsig-verify as default
+        PGPSignatureOutputStream sigStream = null;
+        StringBuilder sigFiles = null;
+        if (signatureGenerator != null) {
+            // the signature is computed while the members are written to the package
+            if ("dpkg-sig".equals(signMethod)) {
+                sigFiles = new StringBuilder();
+            } else {
+                sigStream = new PGPSignatureOutputStream(signatureGenerator);
+            }
+        }
 
-            String binaryName = "debian-binary";
-            String binaryContent = "2.0\n";
-            String controlName = "control.tar.gz";
-            String dataName = "data.tar" + compression.getExtension();
+        OutputStream debOutput = new FileOutputStream(deb);
+        AsyncDigestOutputStream digests = null;
+        if (changesEnabled && changes) {
+            // the checksums of the changes file are computed while the package is written
+            digests = new AsyncDigestOutputStream(debOutput, MessageDigest.getInstance("MD5"), MessageDigest.getInstance("SHA1"), MessageDigest.getInstance("SHA-256"));
+            debOutput = digests;
+        }
 
-            addTo(ar, binaryName, binaryContent);
-            addTo(ar, controlName, tempControl);
-            addTo(ar, dataName, tempData);
+        try (ArArchiveOutputStream ar = new ArArchiveOutputStream(debOutput)) {
+            byte[] binaryBytes = binaryContent.getBytes();
+            addTo(ar, binaryName, binaryBytes.length, new ByteArrayInputStream(binaryBytes), sigStream, sigFiles);
+            addTo(ar, controlName, controlContent.length, new ByteArrayInputStream(controlContent), sigStream, sigFiles);
+            try (InputStream data = new FileInputStream(tempData)) {
+                addTo(ar, dataName, tempData.length(), data, sigStream, sigFiles);
+            }
 
             if (signatureGenerator != null) {
                 console.info("Signing package with key " + key);
 
-                if(signRole == null) {
-                    signRole = "origin";
-                }
-
-                // Use debsig-verify as default
-                if (!"dpkg-sig".equals(signMethod)) {
+                if (sigStream != null) {
                     // Sign file to verify with debsig-verify
-                    PGPSignatureOutputStream sigStream = new PGPSignatureOutputStream(signatureGenerator);
-
-                    addTo(sigStream, binaryContent);
-                    addTo(sigStream, tempControl);
-                    addTo(sigStream, tempData);
                     addTo(ar, "_gpg" + signRole, sigStream.generateASCIISignature());
 
                 } else {
@@ -595,9 +998,7 @@ public class DebMaker {
                                     "Date: " + new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy", Locale.ENGLISH).format(new Date()) + "\n" +
                                     "Role: " + signRole +"\n" +
                                     "Files: \n" +
-                                    addFile(binaryName, binaryContent) +
-                                    addFile(controlName, tempControl) +
-                                    addFile(dataName, tempData);
+                                    sigFiles;
 
                     ByteArrayOutputStream message = new ByteArrayOutputStream();
                     signer.clearSign(outputStr, message);
@@ -605,102 +1006,25 @@ public class DebMaker {
                     addTo(ar, "_gpg" + signRole, message.toString());
                 }
             }
+        }
 
-            ar.close();
-
-            return packageControlFile;
-
-        } catch (Exception e) {
-            throw new PackagingException("Could not create deb package", e);
-        } finally {
-            if (tempData != null) {
-                if (!tempData.delete()) {
-                    console.warn("Could not delete the temporary file " + tempData);
-                }
-            }
-            if (tempControl != null) {
-                if (!tempControl.delete()) {
-                    console.warn("Could not delete the temporary file " + tempControl);
-                }
-            }
+        if (changes) {
+            debChecksums = digests == null ? null : new ChangesFileBuilder.PackageChecksums(digests.getSize(), digests.getHexDigest(0), digests.getHexDigest(1), digests.getHexDigest(2));
         }
-    }
 
-    private String addFile(String name, String input){
-        return addLine(md5Hash(input), sha1Hash(input), input.length(), name);
+        return packageControlFile;
     }
 
-    private String addFile(String name, File input){
-        return addLine(md5Hash(input), sha1Hash(input), input.length(), name);
+    private static PGPSignatureGenerator createSignatureGenerator(PGPSigner signer, int digestCode) throws PGPException {
+        PGPSignatureGenerator signatureGenerator = new PGPSignatureGenerator(new BcPGPContentSignerBuilder(signer.getSecretKey().getPublicKey().getAlgorithm(), digestCode));
+        signatureGenerator.init(PGPSignature.BINARY_DOCUMENT, signer.getPrivateKey());
+        return signatureGenerator;
     }
 
     private String addLine(String md5, String sha1, long size, String name){
         return "\t" + md5 + " " + sha1 + " " + size + " " + name + "\n";
     }
 
-    private String md5Hash(String input){
-        return md5Hash(input.getBytes());
-    }
-
-    private String md5Hash(File input){
-        try {
-            return md5Hash(FileUtils.readFileToByteArray(input));
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-
-        return null;
-    }
-
-    private String md5Hash(byte[] input){
-        //update the input of MD5
-        MD5Digest md5 = new MD5Digest();
-        md5.update(input, 0, input.length);
-
-        //get the output/ digest size and hash it
-        byte[] digest = new byte[md5.getDigestSize()];
-        md5.doFinal(digest, 0);
-
-        return new String(Hex.encode(digest));
-    }
-
-    private String sha1Hash(String input){
-        return sha1Hash(input.getBytes());
-    }
-
-    private String sha1Hash(File input){
-        try {
-            return sha1Hash(FileUtils.readFileToByteArray(input));
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-
-        return null;
-    }
-
-    private String sha1Hash(byte[] input){
-        try
-        {
-            //prepare the input
-            MessageDigest hash = MessageDigest.getInstance(digest);
-            hash.update(input);
-
-            //proceed ....
-            byte[] digest = hash.digest();
-
-            return new String(Hex.encode(digest));
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            System.err.println("No such algorithm");
-            e.printStackTrace();
-        }
-
-        return null;
-    }
-
     private void addTo(ArArchiveOutputStream pOutput, String pName, String pContent) throws IOException {
         final byte[] content = pContent.getBytes();
         ArArchiveEntry archiveEntry = createArArchiveEntry(pName, content.length);
@@ -710,25 +1034,33 @@ public class DebMaker {
         pOutput.closeArchiveEntry();
     }
 
-    private void addTo(ArArchiveOutputStream pOutput, String pName, File pContent) throws IOException {
-        ArArchiveEntry archiveEntry = createArArchiveEntry(pName, pContent.length());
+    /**
+     * Adds a member to the package, feeding its content in the same pass to
+     * the debsig signature or to the checksums listed by dpkg-sig.
+     *
+     * @param pSignature the debsig signature, or null
+     * @param pFiles     the dpkg-sig file list receiving the checksums of the member, or null
+     */
+    private void addTo(ArArchiveOutputStream pOutput, String pName, long pSize, InputStream pContent, PGPSignatureOutputStream pSignature, StringBuilder pFiles) throws IOException, NoSuchAlgorithmException {
+        OutputStream output = pOutput;
+        if (pSignature != null) {
+            output = new TeeOutputStream(pOutput, pSignature);
+        }
 
-        pOutput.putArchiveEntry(archiveEntry);
-        try (InputStream input = new FileInputStream(pContent)) {
-            Utils.copy(input, pOutput);
+        InformationOutputStream md5 = null;
+        InformationOutputStream hash = null;
+        if (pFiles != null) {
+            md5 = new InformationOutputStream(NullOutputStream.INSTANCE, MessageDigest.getInstance("MD5"));
+            hash = new InformationOutputStream(md5, MessageDigest.getInstance(digest));
+            output = new TeeOutputStream(pOutput, hash);
         }
 
+        pOutput.putArchiveEntry(createArArchiveEntry(pName, pSize));
+        Utils.copy(pContent, output);
         pOutput.closeArchiveEntry();
-    }
-
-    private void addTo(final PGPSignatureOutputStream pOutput, final String pContent) throws IOException {
-        final byte[] content = pContent.getBytes();
-        pOutput.write(content);
-    }
 
-    private void addTo(final PGPSignatureOutputStream pOutput, final File pContent) throws IOException {
-        try (InputStream input = new FileInputStream(pContent)) {
-            Utils.copy(input, pOutput);
+        if (pFiles != null) {
+            pFiles.append(addLine(md5.getHexDigest(), hash.getHexDigest(), hash.getSize(), pName));
         }
     }
 
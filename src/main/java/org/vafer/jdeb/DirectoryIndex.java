@@ -0,0 +1,122 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+
+/**
+ * Index of the directories of the data archive, stored as a tree keyed on
+ * the path segments. Looking up or adding a directory is proportional to
+ * the depth of its path and not to the number of directories in the archive.
+ */
+class DirectoryIndex {
+
+    /**
+     * A directory of the archive. The entry is null for the nodes of the tree
+     * that haven't been added to the archive (like the root directory).
+     */
+    static final class Directory {
+
+        private final String path;
+        private final Map<String, Directory> children = new HashMap<>();
+
+        /** The tar entry of the directory */
+        TarArchiveEntry entry;
+
+        /** Whether the directory was declared by a producer, and not only created as a parent */
+        boolean explicit;
+
+        /** Whether the entry has already been written to the archive */
+        boolean written;
+
+        private Directory(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Returns the path of the directory, like <code>./usr/share/</code>
+         */
+        String getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the sub directory with the specified name, and creates it if missing.
+         */
+        Directory child(String name) {
+            Directory child = children.get(name);
+            if (child == null) {
+                child = new Directory(path + name + "/");
+                children.put(name, child);
+            }
+            return child;
+        }
+    }
+
+    private final Directory root = new Directory("./");
+
+    /**
+     * Returns the root directory of the archive.
+     */
+    Directory root() {
+        return root;
+    }
+
+    /**
+     * Returns a copy of the index, for an archive continuing the one indexed.
+     * The entries already written are shared, they don't change anymore.
+     */
+    DirectoryIndex copy() {
+        DirectoryIndex copy = new DirectoryIndex();
+        copy(root, copy.root);
+        return copy;
+    }
+
+    private static void copy(Directory from, Directory to) {
+        to.entry = from.entry;
+        to.explicit = from.explicit;
+        to.written = from.written;
+        for (Map.Entry<String, Directory> child : from.children.entrySet()) {
+            copy(child.getValue(), to.child(child.getKey()));
+        }
+    }
+
+    /**
+     * Returns the directory with the specified path, and creates the
+     * missing nodes of the tree. The path is expected in the tar form,
+     * like <code>./usr/share</code> or <code>./usr/share/</code>.
+     */
+    Directory get(String path) {
+        Directory directory = root;
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start && !(end - start == 1 && path.charAt(start) == '.')) {
+                directory = directory.child(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return directory;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+
+/**
+ * Consumer passing only the entries to another consumer. The files are
+ * neither opened nor read, the content of the files produced as streams
+ * (from an archive for example) is skipped by the producer.
+ */
+class MetadataConsumer implements DataConsumer {
+
+    private final DataConsumer consumer;
+
+    MetadataConsumer( DataConsumer consumer ) {
+        this.consumer = consumer;
+    }
+
+    public void onEachDir( TarArchiveEntry dirEntry ) throws IOException {
+        consumer.onEachDir(dirEntry);
+    }
+
+    public void onEachFile( InputStream input, TarArchiveEntry fileEntry ) throws IOException {
+        consumer.onEachFile(null, fileEntry);
+    }
+
+    public void onEachLocalFile( File file, TarArchiveEntry fileEntry ) throws IOException {
+        consumer.onEachFile(null, fileEntry);
+    }
+
+    public void onEachLink( TarArchiveEntry linkEntry ) throws IOException {
+        consumer.onEachLink(linkEntry);
+    }
+}
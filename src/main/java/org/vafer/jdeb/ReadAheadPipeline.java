@@ -0,0 +1,286 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Pipeline reading the content of the files ahead of the consumer writing
+ * the data archive.
+ *
+ * The producers run on a separate thread and their entries are queued in
+ * order. The files up to a maximum size are read into memory by a pool of
+ * reader threads, which hides the latency of opening and reading them, while
+ * the calling thread passes the entries in their original order to the
+ * consumer. The memory used by the files read ahead is bounded, larger files
+ * are read by the consumer itself when their turn comes.
+ */
+class ReadAheadPipeline {
+
+    /** The default maximum size of the files read ahead */
+    static final int DEFAULT_MAX_FILE_SIZE = 1024 * 1024;
+
+    /** The default maximum amount of memory used by the files read ahead */
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024 * 1024;
+
+    /** An entry of the queue, replayed on the consumer in the calling thread */
+    private interface Item {
+        /** @return false once the last item has been processed */
+        boolean replay( DataConsumer consumer ) throws Exception;
+    }
+
+    private static final Item END = consumer -> false;
+
+    private final int threads;
+    private final int maxFileSize;
+    private final Semaphore buffer;
+
+    ReadAheadPipeline( int threads, int maxFileSize, int bufferSize ) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+        }
+        this.threads = threads;
+        this.maxFileSize = Math.min(maxFileSize, bufferSize);
+        this.buffer = new Semaphore(bufferSize);
+    }
+
+    /**
+     * Runs the producers and passes their entries to the consumer in the
+     * order they were produced.
+     */
+    void produce( final Collection<DataProducer> producers, final DataConsumer consumer ) throws IOException {
+        final BlockingQueue<Item> queue = new ArrayBlockingQueue<>(1024);
+        final ExecutorService readers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "jdeb-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Thread producerThread = new Thread(() -> {
+            try {
+                DataConsumer queueing = new QueueingConsumer(queue, readers);
+                for (DataProducer producer : producers) {
+                    producer.produce(queueing);
+                }
+                queue.put(END);
+            } catch (final Throwable e) {
+                // the failure is reported when the consumer reaches it
+                try {
+                    queue.put(ignored -> {
+                        throw e instanceof Exception ? (Exception) e : new ExecutionException(e);
+                    });
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "jdeb-producer");
+        producerThread.setDaemon(true);
+        producerThread.start();
+
+        try {
+            while (queue.take().replay(consumer)) {
+                // replay the entries until the end of the producers
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while building the data archive");
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            producerThread.interrupt();
+            readers.shutdownNow();
+        }
+    }
+
+    private static byte[] read( File file ) throws IOException {
+        InputStream input;
+        try {
+            input = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            ProducerFileNotFoundException pe = new ProducerFileNotFoundException(e.getMessage(), e);
+            pe.setFilePath(file.getAbsolutePath());
+            throw pe;
+        }
+        try {
+            return IOUtils.toByteArray(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Consumer running on the producer thread, queuing the entries and
+     * scheduling the files to be read ahead.
+     */
+    private final class QueueingConsumer implements DataConsumer {
+
+        private final BlockingQueue<Item> queue;
+        private final ExecutorService readers;
+
+        private QueueingConsumer( BlockingQueue<Item> queue, ExecutorService readers ) {
+            this.queue = queue;
+            this.readers = readers;
+        }
+
+        private void put( Item item ) throws IOException {
+            try {
+                queue.put(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while producing the data");
+            }
+        }
+
+        private void acquire( int size ) throws IOException {
+            try {
+                buffer.acquire(size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while producing the data");
+            }
+        }
+
+        public void onEachDir( final TarArchiveEntry dirEntry ) throws IOException {
+            put(consumer -> {
+                consumer.onEachDir(dirEntry);
+                return true;
+            });
+        }
+
+        public void onEachLink( final TarArchiveEntry linkEntry ) throws IOException {
+            put(consumer -> {
+                consumer.onEachLink(linkEntry);
+                return true;
+            });
+        }
+
+        public void onEachLocalLink( final TarArchiveEntry linkEntry, final File file, final TarArchiveEntry fileEntry ) throws IOException {
+            put(consumer -> {
+                consumer.onEachLocalLink(linkEntry, file, fileEntry);
+                return true;
+            });
+        }
+
+        public void onEachLocalFile( final File file, final TarArchiveEntry fileEntry ) throws IOException {
+            final long size = file.length();
+            if (size > maxFileSize) {
+                // opened and streamed by the consumer when its turn comes
+                put(consumer -> {
+                    consumer.onEachLocalFile(file, fileEntry);
+                    return true;
+                });
+                return;
+            }
+
+            final int permits = (int) size;
+            acquire(permits);
+            final Future<byte[]> content = readers.submit(() -> read(file));
+            put(consumer -> {
+                final byte[] bytes;
+                try {
+                    bytes = content.get();
+                } catch (ExecutionException e) {
+                    buffer.release(permits);
+                    if (!(e.getCause() instanceof ProducerFileNotFoundException)) {
+                        throw e;
+                    }
+                    // the missing file is reported by the consumer, which may ignore it
+                    consumer.onEachLocalFile(file, fileEntry);
+                    return true;
+                }
+                try {
+                    consumer.onEachFile(new ByteArrayInputStream(bytes), fileEntry);
+                } finally {
+                    buffer.release(permits);
+                }
+                return true;
+            });
+        }
+
+        public void onEachFile( final InputStream input, final TarArchiveEntry fileEntry ) throws IOException {
+            final long size = fileEntry.getSize();
+            if (input != null && size >= 0 && size <= maxFileSize) {
+                // copied right away, the stream belongs to the producer
+                final int permits = (int) size;
+                acquire(permits);
+                final byte[] content;
+                try {
+                    content = IOUtils.toByteArray(input);
+                } catch (IOException | RuntimeException e) {
+                    buffer.release(permits);
+                    throw e;
+                }
+                put(consumer -> {
+                    try {
+                        consumer.onEachFile(new ByteArrayInputStream(content), fileEntry);
+                    } finally {
+                        buffer.release(permits);
+                    }
+                    return true;
+                });
+                return;
+            }
+
+            // hand over the stream and wait until the consumer is done with it
+            final CountDownLatch done = new CountDownLatch(1);
+            put(consumer -> {
+                try {
+                    consumer.onEachFile(input, fileEntry);
+                } finally {
+                    done.countDown();
+                }
+                return true;
+            });
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while producing the data");
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+
+import org.vafer.jdeb.utils.PatternMatcher;
+
+/**
+ * A package built from the same data as the main package, with the files
+ * matching its include patterns (like the documentation or the debug symbols).
+ * The files selected are removed from the main package.
+ */
+public final class SplitPackage {
+
+    /** The Debian package produced */
+    private final File deb;
+
+    /** The directory containing the control files to build the package */
+    private final File control;
+
+    /** The patterns of the files of the package */
+    private final String[] includes;
+
+    public SplitPackage(File deb, File control, String[] includes) {
+        this.deb = deb;
+        this.control = control;
+        this.includes = includes;
+    }
+
+    public File getDeb() {
+        return deb;
+    }
+
+    public File getControl() {
+        return control;
+    }
+
+    public String[] getIncludes() {
+        return includes;
+    }
+
+    PatternMatcher getMatcher() {
+        return PatternMatcher.compile(includes);
+    }
+}
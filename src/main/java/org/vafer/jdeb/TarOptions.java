@@ -7,6 +7,14 @@ public class TarOptions {
     private Compression compression = Compression.GZIP;
     private int longFileMode = TarArchiveOutputStream.LONGFILE_GNU;
     private int bigNumberMode = TarArchiveOutputStream.BIGNUMBER_STAR;
+    private int compressionThreads = 1;
+    private int compressionBlockSize = 0;
+    private int xzBlockSize = 0;
+    private Integer compressionLevel;
+    private int readAheadThreads = 0;
+    private long deduplicationThreshold = 0;
+    private boolean detectExecutables = false;
+    private boolean fixScriptLineEndings = false;
 
     public TarOptions compression(Compression compression) {
         this.compression = compression;
@@ -40,6 +48,84 @@ public class TarOptions {
         return this;
     }
 
+    public TarOptions compressionThreads(int threads) {
+        this.compressionThreads = threads;
+
+        return this;
+    }
+
+    /**
+     * Sets the size of the blocks compressed in parallel with gzip, 0 selects
+     * the default size.
+     */
+    public TarOptions compressionBlockSize(int blockSize) {
+        this.compressionBlockSize = blockSize;
+
+        return this;
+    }
+
+    /**
+     * Sets the size of the blocks compressed in parallel with xz, 0 selects
+     * three times the dictionary size of the preset. The dictionary is shrunk
+     * to the size of smaller blocks.
+     */
+    public TarOptions xzBlockSize(int blockSize) {
+        this.xzBlockSize = blockSize;
+
+        return this;
+    }
+
+    /**
+     * Sets the compression level, null selects the default level of the
+     * compression method.
+     */
+    public TarOptions compressionLevel(Integer level) {
+        this.compressionLevel = level;
+
+        return this;
+    }
+
+    /**
+     * Sets the number of threads reading the files ahead of the archive
+     * being written, 0 to read them on the writing thread.
+     */
+    public TarOptions readAheadThreads(int threads) {
+        this.readAheadThreads = threads;
+
+        return this;
+    }
+
+    /**
+     * Sets the minimum size of the files stored only once when their content
+     * appears several times, the copies being written as hard links. 0 disables
+     * the deduplication.
+     */
+    public TarOptions deduplicationThreshold(long threshold) {
+        this.deduplicationThreshold = threshold;
+
+        return this;
+    }
+
+    /**
+     * Sets whether the shell scripts and the ELF binaries recognized from
+     * their first bytes are made executable, by the users allowed to read them.
+     */
+    public TarOptions detectExecutables(boolean detect) {
+        this.detectExecutables = detect;
+
+        return this;
+    }
+
+    /**
+     * Sets whether the line endings of the shell scripts recognized from
+     * their first bytes are converted to the Unix line endings.
+     */
+    public TarOptions fixScriptLineEndings(boolean fix) {
+        this.fixScriptLineEndings = fix;
+
+        return this;
+    }
+
     public int longFileMode() {
         return longFileMode;
     }
@@ -51,4 +137,36 @@ public class TarOptions {
     public Compression compression() {
         return compression;
     }
+
+    public int compressionThreads() {
+        return compressionThreads;
+    }
+
+    public int compressionBlockSize() {
+        return compressionBlockSize;
+    }
+
+    public int xzBlockSize() {
+        return xzBlockSize;
+    }
+
+    public Integer compressionLevel() {
+        return compressionLevel;
+    }
+
+    public int readAheadThreads() {
+        return readAheadThreads;
+    }
+
+    public long deduplicationThreshold() {
+        return deduplicationThreshold;
+    }
+
+    public boolean detectExecutables() {
+        return detectExecutables;
+    }
+
+    public boolean fixScriptLineEndings() {
+        return fixScriptLineEndings;
+    }
 }
@@ -46,6 +46,11 @@ public final class Data extends PatternSet implements DataProducer {
 
     private Boolean conffile;
 
+    /** Replaces the variables in the files decoded as text, the ones guessed binary are left unchanged */
+    private boolean filter;
+
+    private boolean hardLinks;
+
     private String destinationName;
 
     private MissingSourceBehavior missingSrc = FAIL;
@@ -70,6 +75,22 @@ public final class Data extends PatternSet implements DataProducer {
         return this.conffile;
     }
 
+    public void setFilter(boolean filter) {
+        this.filter = filter;
+    }
+
+    public boolean getFilter() {
+        return this.filter;
+    }
+
+    public void setHardLinks(boolean hardLinks) {
+        this.hardLinks = hardLinks;
+    }
+
+    public boolean getHardLinks() {
+        return this.hardLinks;
+    }
+
     public void setDst(String destinationName) {
         this.destinationName = destinationName;
     }
@@ -121,7 +142,8 @@ public final class Data extends PatternSet implements DataProducer {
                 src,
                 getIncludePatterns(getProject()),
                 getExcludePatterns(getProject()),
-                mappers
+                mappers,
+                hardLinks
             ).produce(pReceiver);
         }
     }
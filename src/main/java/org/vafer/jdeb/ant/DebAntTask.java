@@ -17,6 +17,7 @@
 package org.vafer.jdeb.ant;
 
 import java.io.File;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -31,6 +32,8 @@ import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.DebMaker;
 import org.vafer.jdeb.PackagingException;
 import org.vafer.jdeb.producers.DataProducerFileSet;
+import org.vafer.jdeb.producers.DataProducerFiltered;
+import org.vafer.jdeb.utils.FilteredFile;
 import org.vafer.jdeb.utils.OutputTimestampResolver;
 
 /**
@@ -68,9 +71,39 @@ public class DebAntTask extends MatchingTask {
     /** Enable the creation of the changes file */
     private boolean changesEnabled = true;
 
-    /** The compression method used for the data file (none, gzip, bzip2 or xz) */
+    /** The compression method used for the data file (none, gzip, bzip2, xz or zstd) */
     private String compression = "gzip";
 
+    /** The compression method used for the control file (none, gzip, xz or zstd) */
+    private String controlCompression = "gzip";
+
+    /** The compression level, the default of the compression method if not set */
+    private Integer compressionLevel;
+
+    /** The number of threads used to compress the data file */
+    private int compressionThreads = 1;
+
+    /** The size of the blocks compressed in parallel with gzip, 0 for the default */
+    private int compressionBlockSize;
+
+    /** The size of the blocks compressed in parallel with xz, 0 for the default of the preset */
+    private int xzBlockSize;
+
+    /** The number of threads reading the files ahead of the data archive, 0 to disable */
+    private int readAheadThreads;
+
+    /** The minimum size of the files with the same content written as hard links, 0 to disable */
+    private long deduplicationThreshold;
+
+    /** Whether the shell scripts and the ELF binaries of the data are made executable */
+    private boolean detectExecutables;
+
+    /** Whether the line endings of the shell scripts of the data are converted to Unix line endings */
+    private boolean fixScriptLineEndings;
+
+    /** Whether the hard links of the filesets are kept */
+    private boolean hardLinks;
+
     /**
      * The digest algorithm to use.
      *
@@ -127,16 +160,57 @@ public class DebAntTask extends MatchingTask {
         this.compression = compression;
     }
 
+    public void setControlCompression( String controlCompression ) {
+        this.controlCompression = controlCompression;
+    }
+
+    public void setCompressionLevel( int compressionLevel ) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public void setCompressionThreads( int compressionThreads ) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    public void setCompressionBlockSize( int compressionBlockSize ) {
+        this.compressionBlockSize = compressionBlockSize;
+    }
+
+    public void setXzBlockSize( int xzBlockSize ) {
+        this.xzBlockSize = xzBlockSize;
+    }
+
+    public void setReadAheadThreads( int readAheadThreads ) {
+        this.readAheadThreads = readAheadThreads;
+    }
+
+    public void setDeduplicationThreshold( long deduplicationThreshold ) {
+        this.deduplicationThreshold = deduplicationThreshold;
+    }
+
+    public void setDetectExecutables( boolean detectExecutables ) {
+        this.detectExecutables = detectExecutables;
+    }
+
+    public void setFixScriptLineEndings( boolean fixScriptLineEndings ) {
+        this.fixScriptLineEndings = fixScriptLineEndings;
+    }
+
+    public void setHardLinks( boolean hardLinks ) {
+        this.hardLinks = hardLinks;
+    }
+
     public void setVerbose( boolean verbose ) {
         this.verbose = verbose;
     }
 
     public void addFileSet( FileSet fileset ) {
-        dataProducers.add(new DataProducerFileSet(fileset));
+        // the option may be set after the fileset is added
+        dataProducers.add(receiver -> new DataProducerFileSet(fileset, hardLinks).produce(receiver));
     }
 
     public void addTarFileSet( Tar.TarFileSet fileset ) {
-        dataProducers.add(new DataProducerFileSet(fileset));
+        dataProducers.add(receiver -> new DataProducerFileSet(fileset, hardLinks).produce(receiver));
     }
 
     public void addData( Data data ) {
@@ -158,6 +232,7 @@ public class DebAntTask extends MatchingTask {
         }
 
         // validate the type of the <data> elements
+        final Collection<DataProducer> producers = new ArrayList<>();
         for (DataProducer dataProducer : dataProducers) {
             if (dataProducer instanceof Data) {
                 Data data = (Data) dataProducer;
@@ -166,11 +241,18 @@ public class DebAntTask extends MatchingTask {
                 } else if (!Arrays.asList("file", "directory", "archive").contains(data.getType().toLowerCase())) {
                     throw new BuildException("The type '" + data.getType() + "' of the data element is unknown (expected 'file', 'directory' or 'archive')");
                 }
+                if (data.getFilter()) {
+                    // the variables are the properties of the project
+                    final Charset charset = encoding == null || encoding.isEmpty() ? Charset.defaultCharset() : Charset.forName(encoding);
+                    dataProducer = new DataProducerFiltered(data, getProject()::getProperty, charset, FilteredFile.DEFAULT_OPEN_TOKEN, FilteredFile.DEFAULT_CLOSE_TOKEN);
+                }
                 if (data.getConffile() != null && data.getConffile()) {
                     conffilesProducers.add(dataProducer);
                 }
             }
+            producers.add(dataProducer);
         }
+        dataProducers = producers;
 
         Console console = new TaskConsole(this, verbose);
 
@@ -186,6 +268,15 @@ public class DebAntTask extends MatchingTask {
         debMaker.setKey(key);
         debMaker.setPassphrase(passphrase);
         debMaker.setCompression(compression);
+        debMaker.setControlCompression(controlCompression);
+        debMaker.setCompressionLevel(compressionLevel);
+        debMaker.setCompressionThreads(compressionThreads);
+        debMaker.setCompressionBlockSize(compressionBlockSize);
+        debMaker.setXzBlockSize(xzBlockSize);
+        debMaker.setReadAheadThreads(readAheadThreads);
+        debMaker.setDeduplicationThreshold(deduplicationThreshold);
+        debMaker.setDetectExecutables(detectExecutables);
+        debMaker.setFixScriptLineEndings(fixScriptLineEndings);
         debMaker.setDigest(digest);
         Long outputTimestampMs = new OutputTimestampResolver(console).resolveOutputTimestamp(null);
         debMaker.setOutputTimestampMs(outputTimestampMs);
@@ -18,13 +18,16 @@ package org.vafer.jdeb.ant;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
+import org.vafer.jdeb.mapping.IndexedLsMapper;
 import org.vafer.jdeb.mapping.LsMapper;
+import org.vafer.jdeb.mapping.LsMapper.ParseError;
 import org.vafer.jdeb.mapping.PermMapper;
 
 /**
  * Ant "mapper" element acting as factory for the entry mapper.
- * Supported types: ls, perm
+ * Supported types: ls, ls-indexed, perm
  */
 public final class Mapper {
 
@@ -40,6 +43,9 @@ public final class Mapper {
     private String fileMode;
     private String dirMode;
 
+    /** The mapper created, reused every time the data is produced */
+    private org.vafer.jdeb.mapping.Mapper mapper;
+
     public void setType( final String pType ) {
         mapperType = pType;
     }
@@ -83,6 +89,13 @@ public final class Mapper {
     }
 
     public org.vafer.jdeb.mapping.Mapper createMapper() throws IOException {
+        if (mapper == null) {
+            mapper = newMapper();
+        }
+        return mapper;
+    }
+
+    private org.vafer.jdeb.mapping.Mapper newMapper() throws IOException {
 
         if ("perm".equalsIgnoreCase(mapperType)) {
             return new PermMapper(uid, gid, user, group, fileMode, dirMode, strip, prefix);
@@ -96,6 +109,14 @@ public final class Mapper {
             }
         }
 
+        if ("ls-indexed".equalsIgnoreCase(mapperType)) {
+            try (InputStream input = new FileInputStream(src)) {
+                return new IndexedLsMapper(input);
+            } catch (ParseError e) {
+                throw new IOException("Could not parse the listing " + src, e);
+            }
+        }
+
         throw new IOException("Unknown mapper type '" + mapperType + "'");
     }
 
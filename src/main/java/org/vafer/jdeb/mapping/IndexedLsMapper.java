@@ -0,0 +1,230 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.vafer.jdeb.mapping.LsMapper.ParseError;
+
+/**
+ * Variant of the {@link LsMapper} for huge "ls -laR &gt; mapping.txt" dumps.
+ *
+ * The dump is read line by line with a scanner instead of regular expressions,
+ * and only the mode and the ownership of each path are kept, packed into a
+ * <code>long</code> with the user and group names interned in a table. The
+ * paths are indexed by a tree of their segments, the directories are stored
+ * only once. The entries are mapped on lookup, no entry is built upfront.
+ *
+ * Unlike the {@link LsMapper}, the directory entries are also matched with a
+ * trailing slash, and the other kinds of files (links, devices) are skipped
+ * instead of rejected.
+ */
+public final class IndexedLsMapper implements Mapper {
+
+    private static final long NONE = -1;
+
+    /** The user and group names, referenced by their index in the records */
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIndexes = new HashMap<>();
+
+    private final Node root = new Node();
+
+    /** A segment of the paths listed */
+    private static final class Node {
+        /** The children by segment, null for the files */
+        private Map<String, Node> children;
+        /** The mode, user and group of the path, or NONE if not listed */
+        private long record = NONE;
+
+        private Node child( String segment ) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            return children.computeIfAbsent(segment, s -> new Node());
+        }
+    }
+
+    public IndexedLsMapper( final InputStream pInput ) throws IOException, ParseError {
+        parse(new BufferedReader(new InputStreamReader(pInput, StandardCharsets.UTF_8)));
+    }
+
+    private void parse( final BufferedReader reader ) throws IOException, ParseError {
+        Node dir = root;
+        while (true) {
+            readTotal(reader);
+            dir.record = readDir(reader, true);
+            readDir(reader, false);
+
+            while (true) {
+                final String line = reader.readLine();
+                if (line == null) {
+                    return;
+                }
+                if (line.isEmpty()) {
+                    break;
+                }
+                if (line.charAt(0) == 'd') {
+                    // listed with its own content
+                    continue;
+                }
+                if (line.charAt(0) == '-') {
+                    dir.child(lastToken(line)).record = readRecord(line);
+                } else if ("lcbps".indexOf(line.charAt(0)) < 0) {
+                    throw new ParseError("expected file line but got \"" + line + "\"");
+                }
+            }
+
+            final String base = reader.readLine();
+            if (base == null) {
+                return;
+            }
+            if (!base.startsWith("./") || !base.endsWith(":") || base.length() < 3) {
+                throw new ParseError("expected base line but got \"" + base + "\"");
+            }
+            dir = root;
+            for (String segment : base.substring(2, base.length() - 1).split("/")) {
+                if (!segment.isEmpty()) {
+                    dir = dir.child(segment);
+                }
+            }
+        }
+    }
+
+    private static void readTotal( final BufferedReader reader ) throws IOException, ParseError {
+        final String line = reader.readLine();
+        if (line == null || !line.startsWith("total ")) {
+            throw new ParseError("expected total line but got \"" + line + "\"");
+        }
+    }
+
+    private long readDir( final BufferedReader reader, final boolean current ) throws IOException, ParseError {
+        final String line = reader.readLine();
+        if (line == null || line.isEmpty() || line.charAt(0) != 'd' || !(current ? line.endsWith(" .") : line.endsWith(" .."))) {
+            throw new ParseError("expected dirline but got \"" + line + "\"");
+        }
+        return readRecord(line);
+    }
+
+    /**
+     * Reads the mode, the user and the group of a line like
+     * <code>-rw-r--r--  1 user  group  2934 Jun 25 03:48 name</code>.
+     */
+    private long readRecord( final String line ) throws ParseError {
+        if (line.length() <= 10 || !Character.isWhitespace(line.charAt(10))) {
+            throw new ParseError("expected file line but got \"" + line + "\"");
+        }
+
+        // simplified like LsMapper, every permission set counts as one bit
+        int mode = 0;
+        for (int i = 1; i < 10; i++) {
+            final char c = line.charAt(i);
+            if (c != '-' && c != 'r' && c != 'w' && c != 'x') {
+                throw new ParseError("expected file line but got \"" + line + "\"");
+            }
+            if (c != '-') {
+                mode |= 1 << (9 - i);
+            }
+        }
+
+        final int linksEnd = skipToken(line, skipWhitespace(line, 10));
+        final int userStart = skipWhitespace(line, linksEnd);
+        final int userEnd = skipToken(line, userStart);
+        final int groupStart = skipWhitespace(line, userEnd);
+        final int groupEnd = skipToken(line, groupStart);
+        if (groupEnd == line.length()) {
+            throw new ParseError("expected file line but got \"" + line + "\"");
+        }
+
+        final long user = intern(line.substring(userStart, userEnd));
+        final long group = intern(line.substring(groupStart, groupEnd));
+        return ((long) mode << 48) | (user << 24) | group;
+    }
+
+    private int intern( final String name ) {
+        Integer index = nameIndexes.get(name);
+        if (index == null) {
+            index = names.size();
+            names.add(name);
+            nameIndexes.put(name, index);
+        }
+        return index;
+    }
+
+    private static int skipWhitespace( final String line, int i ) {
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipToken( final String line, int i ) {
+        while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the name of the file, the last token of the line like with the {@link LsMapper}.
+     */
+    private static String lastToken( final String line ) throws ParseError {
+        int end = line.length();
+        int start = end;
+        while (start > 0 && !Character.isWhitespace(line.charAt(start - 1))) {
+            start--;
+        }
+        if (start == end) {
+            throw new ParseError("expected file line but got \"" + line + "\"");
+        }
+        return line.substring(start, end);
+    }
+
+    private Node find( final String path ) {
+        Node node = root;
+        int start = 0;
+        for (int i = 0; i <= path.length() && node != null; i++) {
+            if (i == path.length() || path.charAt(i) == '/') {
+                if (i > start && !(i == start + 1 && path.charAt(start) == '.')) {
+                    node = node.children != null ? node.children.get(path.substring(start, i)) : null;
+                }
+                start = i + 1;
+            }
+        }
+        return node;
+    }
+
+    public TarArchiveEntry map( final TarArchiveEntry pEntry ) {
+        final Node node = find(pEntry.getName());
+        if (node != null && node.record != NONE) {
+            pEntry.setMode((int) (node.record >>> 48));
+            pEntry.setUserId(0);
+            pEntry.setGroupId(0);
+            pEntry.setUserName(names.get((int) (node.record >>> 24) & 0xFFFFFF));
+            pEntry.setGroupName(names.get((int) node.record & 0xFFFFFF));
+        }
+        return pEntry;
+    }
+}
@@ -216,7 +216,12 @@ drwxr-xr-x    4 tcurdt  tcurdt   136 Jun 25 03:48 classes
     public TarArchiveEntry map( final TarArchiveEntry pEntry ) {
         final TarArchiveEntry entry = mapping.get(pEntry.getName());
         if (entry != null) {
-            return entry;
+            // the entry is updated in place, the mapping entries are shared
+            pEntry.setMode(entry.getMode());
+            pEntry.setUserId(entry.getLongUserId());
+            pEntry.setGroupId(entry.getLongGroupId());
+            pEntry.setUserName(entry.getUserName());
+            pEntry.setGroupName(entry.getGroupName());
         }
         return pEntry;
     }
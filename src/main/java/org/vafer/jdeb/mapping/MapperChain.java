@@ -0,0 +1,86 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.mapping;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+
+/**
+ * Applies a sequence of mappers. The chain is compiled once: the mappers
+ * doing nothing are left out and the consecutive permission mappers are
+ * fused, so an entry is mapped in a single pass when possible.
+ */
+public final class MapperChain implements Mapper {
+
+    private final Mapper[] mappers;
+
+    private MapperChain( Mapper[] mappers ) {
+        this.mappers = mappers;
+    }
+
+    /**
+     * Returns a mapper applying the specified mappers in sequence.
+     */
+    public static Mapper of( final Mapper... pMappers ) {
+        final List<Mapper> chain = new ArrayList<>();
+        if (pMappers != null) {
+            for (Mapper mapper : pMappers) {
+                add(chain, mapper);
+            }
+        }
+
+        if (chain.isEmpty()) {
+            return NullMapper.INSTANCE;
+        }
+        if (chain.size() == 1) {
+            return chain.get(0);
+        }
+        return new MapperChain(chain.toArray(new Mapper[0]));
+    }
+
+    private static void add( final List<Mapper> chain, final Mapper mapper ) {
+        if (mapper == null || mapper == NullMapper.INSTANCE) {
+            return;
+        }
+
+        if (mapper instanceof MapperChain) {
+            for (Mapper m : ((MapperChain) mapper).mappers) {
+                add(chain, m);
+            }
+            return;
+        }
+
+        if (mapper instanceof PermMapper && !chain.isEmpty() && chain.get(chain.size() - 1) instanceof PermMapper) {
+            final PermMapper fused = ((PermMapper) chain.get(chain.size() - 1)).fuse((PermMapper) mapper);
+            if (fused != null) {
+                chain.set(chain.size() - 1, fused);
+                return;
+            }
+        }
+
+        chain.add(mapper);
+    }
+
+    public TarArchiveEntry map( final TarArchiveEntry pEntry ) {
+        TarArchiveEntry entry = pEntry;
+        for (Mapper mapper : mappers) {
+            entry = mapper.map(entry);
+        }
+        return entry;
+    }
+}
@@ -55,11 +55,43 @@ public final class PermMapper implements Mapper {
         this(uid, gid, user, group, toMode(fileMode), toMode(dirMode), strip, prefix);
     }
 
+    /**
+     * Returns a mapper equivalent to this mapper followed by the specified
+     * mapper, or null if they can't be fused. The mappers are fused if the
+     * second one doesn't change the path of the entries.
+     */
+    PermMapper fuse( final PermMapper next ) {
+        if (next.changesPath()) {
+            return null;
+        }
+        return new PermMapper(
+            next.uid > -1 ? next.uid : uid,
+            next.gid > -1 ? next.gid : gid,
+            next.user != null ? next.user : user,
+            next.group != null ? next.group : group,
+            next.fileMode > -1 ? next.fileMode : fileMode,
+            next.dirMode > -1 ? next.dirMode : dirMode,
+            strip,
+            prefix);
+    }
+
+    private boolean changesPath() {
+        return strip > 0 || !prefix.isEmpty();
+    }
+
     public TarArchiveEntry map( final TarArchiveEntry entry ) {
-        entry.setName(Utils.stripLeadingSlash(Utils.joinUnixPath(
-            prefix,
-            Utils.stripPath(strip, entry.getName())
-        )));
+        if (changesPath()) {
+            entry.setName(Utils.stripLeadingSlash(Utils.joinUnixPath(
+                prefix,
+                Utils.stripPath(strip, entry.getName())
+            )));
+        } else {
+            final String name = entry.getName();
+            final String stripped = Utils.stripLeadingSlash(name);
+            if (!stripped.equals(name)) {
+                entry.setName(stripped);
+            }
+        }
 
         // Set ownership
         if (uid > -1) {
@@ -104,6 +104,32 @@ public final class Data implements DataProducer {
         return this.conffile;
     }
 
+    @Parameter
+    private boolean hardLinks = false;
+
+    public void setHardLinks(boolean hardLinks) {
+        this.hardLinks = hardLinks;
+    }
+
+    public boolean getHardLinks() {
+        return this.hardLinks;
+    }
+
+    /**
+     * Replaces the variables in the files. The files are decoded as text, the
+     * ones guessed binary are left unchanged but other binaries are corrupted.
+     */
+    @Parameter
+    private boolean filter = false;
+
+    public void setFilter(boolean filter) {
+        this.filter = filter;
+    }
+
+    public boolean getFilter() {
+        return this.filter;
+    }
+
     @Parameter(alias = "includes")
     private String[] includePatterns;
 
@@ -197,7 +223,7 @@ public final class Data implements DataProducer {
         }
 
         if (typeIs("directory")) {
-            new DataProducerDirectory(src, includePatterns, excludePatterns, mappers).produce(pReceiver);
+            new DataProducerDirectory(src, includePatterns, excludePatterns, mappers, hardLinks).produce(pReceiver);
             return;
         }
 
@@ -19,12 +19,14 @@ package org.vafer.jdeb.maven;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -50,6 +52,7 @@ import org.vafer.jdeb.Console;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.DebMaker;
 import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.producers.DataProducerFiltered;
 import org.vafer.jdeb.utils.MapVariableResolver;
 import org.vafer.jdeb.utils.OutputTimestampResolver;
 import org.vafer.jdeb.utils.SymlinkUtils;
@@ -125,11 +128,79 @@ public class DebMojo extends AbstractMojo {
     private boolean changesEnabled;
 
     /**
-     * The compression method used for the data file (none, gzip, bzip2 or xz)
+     * The compression method used for the data file (none, gzip, bzip2, xz or zstd)
      */
     @Parameter(defaultValue = "gzip")
     private String compression;
 
+    /**
+     * The compression method used for the control file (none, gzip, xz or zstd)
+     */
+    @Parameter(defaultValue = "gzip")
+    private String controlCompression;
+
+    /**
+     * The compression level of the data file (0-9 for gzip and xz, 1-9 for
+     * bzip2, 1-22 for zstd), also used for the control file compressed with
+     * the same method. Uses the default of the compression method if not set,
+     * the levels out of range are rejected.
+     */
+    @Parameter
+    private Integer compressionLevel;
+
+    /**
+     * The number of threads used to compress the data file. Gzip and xz
+     * compression are split into blocks compressed in parallel and zstd
+     * uses as many workers if greater than 1.
+     */
+    @Parameter(defaultValue = "1")
+    private int compressionThreads;
+
+    /**
+     * The size in bytes of the blocks compressed in parallel with gzip.
+     * Defaults to 128 KiB.
+     */
+    @Parameter(defaultValue = "0")
+    private int compressionBlockSize;
+
+    /**
+     * The size in bytes of the blocks compressed in parallel with xz. Defaults
+     * to three times the dictionary size of the level (24 MiB by default), the
+     * dictionary is shrunk to the size of smaller blocks.
+     */
+    @Parameter(defaultValue = "0")
+    private int xzBlockSize;
+
+    /**
+     * The number of threads reading the files of the package ahead of the
+     * data archive being written. Helps on file systems with a high latency,
+     * 0 reads the files sequentially.
+     */
+    @Parameter(defaultValue = "0")
+    private int readAheadThreads;
+
+    /**
+     * The minimum size in bytes of the files stored only once in the data
+     * archive when their content appears several times, the copies are
+     * written as hard links. 0 disables the deduplication.
+     */
+    @Parameter(defaultValue = "0")
+    private long deduplicationThreshold;
+
+    /**
+     * Boolean option whether the shell scripts and the ELF binaries of the
+     * data, recognized from their first bytes, are made executable.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean detectExecutables;
+
+    /**
+     * Boolean option whether the line endings of the shell scripts of the
+     * data are converted to Unix line endings.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean fixScriptLineEndings;
+
     /**
      * Boolean option whether to attach the artifact to the project
      */
@@ -247,6 +318,15 @@ public class DebMojo extends AbstractMojo {
     @Parameter
     private Data[] dataSet;
 
+    /**
+     * Packages built from the same data set, with the files matching their
+     * include patterns (like the documentation or the debug symbols). The
+     * data set is read only once and the files selected are removed from the
+     * main package.
+     */
+    @Parameter
+    private SplitPackage[] splitPackages;
+
     /**
      * When enabled SNAPSHOT inside the version gets replaced with current timestamp or
      * if set a value of a environment variable.
@@ -414,6 +494,37 @@ public class DebMojo extends AbstractMojo {
         }
     }
 
+    /**
+     * Replaces the data elements with filtered files by producers replacing
+     * the variables in their files, also as producers of conffiles.
+     */
+    private void filterData( VariableResolver resolver ) {
+        final Map<DataProducer, DataProducer> filtered = new IdentityHashMap<>();
+        if (dataSet != null) {
+            final Charset charset = isBlank(encoding) ? Charset.defaultCharset() : Charset.forName(encoding);
+            for (Data item : dataSet) {
+                if (item.getFilter()) {
+                    filtered.put(item, new DataProducerFiltered(item, resolver, charset, openReplaceToken, closeReplaceToken));
+                }
+            }
+        }
+        if (filtered.isEmpty()) {
+            return;
+        }
+
+        final Collection<DataProducer> producers = new ArrayList<>();
+        for (DataProducer producer : dataProducers) {
+            producers.add(filtered.getOrDefault(producer, producer));
+        }
+        dataProducers = producers;
+
+        final Collection<DataProducer> conffiles = new ArrayList<>();
+        for (DataProducer producer : conffileProducers) {
+            conffiles.add(filtered.getOrDefault(producer, producer));
+        }
+        conffileProducers = conffiles;
+    }
+
     /**
      * Doc some cleanup and conversion on the Maven project version.
      * <ul>
@@ -509,6 +620,8 @@ public class DebMojo extends AbstractMojo {
         final File changesSaveFile = new File(Utils.replaceVariables(resolver, changesSave, openReplaceToken, closeReplaceToken));
         final File keyringFile = keyring == null ? null : new File(Utils.replaceVariables(resolver, keyring, openReplaceToken, closeReplaceToken));
 
+        filterData(resolver);
+
         // if there are no producers defined we try to use the artifacts
         if (dataProducers.isEmpty()) {
 
@@ -576,6 +689,15 @@ public class DebMojo extends AbstractMojo {
             debMaker.setChangesSave(changesSaveFile);
             debMaker.setChangesEnabled(changesEnabled);
             debMaker.setCompression(compression);
+            debMaker.setControlCompression(controlCompression);
+            debMaker.setCompressionLevel(compressionLevel);
+            debMaker.setCompressionThreads(compressionThreads);
+            debMaker.setCompressionBlockSize(compressionBlockSize);
+            debMaker.setXzBlockSize(xzBlockSize);
+            debMaker.setReadAheadThreads(readAheadThreads);
+            debMaker.setDeduplicationThreshold(deduplicationThreshold);
+            debMaker.setDetectExecutables(detectExecutables);
+            debMaker.setFixScriptLineEndings(fixScriptLineEndings);
             debMaker.setKeyring(keyringFile);
             debMaker.setKey(key);
             debMaker.setPassphrase(passphrase);
@@ -591,6 +713,14 @@ public class DebMojo extends AbstractMojo {
             debMaker.setTarLongFileMode(tarLongFileMode);
             debMaker.setIgnoreBrokenLinks(ignoreBrokenLinks);
             debMaker.setOutputTimestampMs(outputTimestampMs);
+            final List<org.vafer.jdeb.SplitPackage> splits = new ArrayList<>();
+            if (splitPackages != null) {
+                for (SplitPackage splitPackage : splitPackages) {
+                    org.vafer.jdeb.SplitPackage split = splitPackage.createSplitPackage(resolver, openReplaceToken, closeReplaceToken);
+                    debMaker.addSplitPackage(split);
+                    splits.add(split);
+                }
+            }
             debMaker.validate();
             debMaker.makeDeb();
 
@@ -602,6 +732,13 @@ public class DebMojo extends AbstractMojo {
                 } else {
                     project.getArtifact().setFile(debFile);
                 }
+
+                for (int i = 0; i < splits.size(); i++) {
+                    if (splitPackages[i].getClassifier() != null) {
+                        console.info("Attaching created debian package " + splits.get(i).getDeb());
+                        projectHelper.attachArtifact(project, type, splitPackages[i].getClassifier(), splits.get(i).getDeb());
+                    }
+                }
             }
 
         } catch (PackagingException e) {
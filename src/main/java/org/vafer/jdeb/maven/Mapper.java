@@ -19,15 +19,18 @@ package org.vafer.jdeb.maven;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.apache.maven.plugins.annotations.Parameter;
+import org.vafer.jdeb.mapping.IndexedLsMapper;
 import org.vafer.jdeb.mapping.LsMapper;
+import org.vafer.jdeb.mapping.LsMapper.ParseError;
 import org.vafer.jdeb.mapping.NullMapper;
 import org.vafer.jdeb.mapping.PermMapper;
 
 /**
  * Maven "mapper" element acting as factory for the entry mapper.
- * Supported types: ls, perm
+ * Supported types: ls, ls-indexed, perm
  */
 public final class Mapper {
 
@@ -61,8 +64,18 @@ public final class Mapper {
     @Parameter
     private File src;
 
+    /** The mapper created, reused every time the data is produced */
+    private org.vafer.jdeb.mapping.Mapper mapper;
+
 
     public org.vafer.jdeb.mapping.Mapper createMapper() throws IOException {
+        if (mapper == null) {
+            mapper = newMapper();
+        }
+        return mapper;
+    }
+
+    private org.vafer.jdeb.mapping.Mapper newMapper() throws IOException {
 
         if ("ls".equalsIgnoreCase(type)) {
             try {
@@ -72,6 +85,14 @@ public final class Mapper {
             }
         }
 
+        if ("ls-indexed".equalsIgnoreCase(type)) {
+            try (InputStream input = new FileInputStream(src)) {
+                return new IndexedLsMapper(input);
+            } catch (ParseError e) {
+                throw new IOException("Could not parse the listing " + src, e);
+            }
+        }
+
         if ("perm".equalsIgnoreCase(type)) {
             return new PermMapper(uid, gid, user, group, filemode, dirmode, strip, prefix);
         }
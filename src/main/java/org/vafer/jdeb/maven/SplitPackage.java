@@ -0,0 +1,90 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.apache.maven.plugins.annotations.Parameter;
+import org.vafer.jdeb.utils.Utils;
+import org.vafer.jdeb.utils.VariableResolver;
+
+/**
+ * Maven "splitPackage" element, a package built with the files of the data
+ * set matching its include patterns.
+ */
+public final class SplitPackage {
+
+    /**
+     * The debian package to be generated, with the same substitutions as the
+     * main package.
+     */
+    @Parameter(required = true)
+    private String deb;
+
+    /**
+     * The directory containing the control files of the package.
+     */
+    @Parameter(required = true)
+    private String controlDir;
+
+    /**
+     * The classifier of the artifact attached, the package isn't attached if not set.
+     */
+    @Parameter
+    private String classifier;
+
+    @Parameter(alias = "includes")
+    private String[] includePatterns;
+
+    public void setDeb( String deb ) {
+        this.deb = deb;
+    }
+
+    public void setControlDir( String controlDir ) {
+        this.controlDir = controlDir;
+    }
+
+    public void setClassifier( String classifier ) {
+        this.classifier = classifier;
+    }
+
+    public String getClassifier() {
+        return classifier;
+    }
+
+    public void setIncludes( String includes ) {
+        includePatterns = null;
+        if (includes != null && includes.length() > 0) {
+            List<String> tokens = new ArrayList<>();
+            StringTokenizer tok = new StringTokenizer(includes, ", ", false);
+            while (tok.hasMoreTokens()) {
+                tokens.add(tok.nextToken());
+            }
+            includePatterns = tokens.toArray(new String[tokens.size()]);
+        }
+    }
+
+    public org.vafer.jdeb.SplitPackage createSplitPackage( VariableResolver resolver, String openReplaceToken, String closeReplaceToken ) {
+        return new org.vafer.jdeb.SplitPackage(
+            deb == null ? null : new File(Utils.replaceVariables(resolver, deb, openReplaceToken, closeReplaceToken)),
+            controlDir == null ? null : new File(Utils.replaceVariables(resolver, controlDir, openReplaceToken, closeReplaceToken)),
+            includePatterns);
+    }
+}
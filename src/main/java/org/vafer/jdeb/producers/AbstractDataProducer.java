@@ -16,15 +16,13 @@
 package org.vafer.jdeb.producers;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.tools.ant.types.selectors.SelectorUtils;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
-import org.vafer.jdeb.ProducerFileNotFoundException;
 import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.mapping.MapperChain;
+import org.vafer.jdeb.utils.PatternMatcher;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 
 /**
@@ -32,46 +30,27 @@ import java.io.IOException;
  */
 public abstract class AbstractDataProducer implements DataProducer {
 
-    private final String[] includes;
-    private final String[] excludes;
-    private final Mapper[] mappers;
+    private final PatternMatcher includes;
+    private final PatternMatcher excludes;
+    private final Mapper mapper;
 
 
     public AbstractDataProducer( final String[] pIncludes, final String[] pExcludes, final Mapper[] pMapper ) {
-        excludes = (pExcludes != null) ? pExcludes : new String[0];
-        includes = (pIncludes != null) ? pIncludes : new String[] { "**" };
-        mappers = (pMapper != null) ? pMapper : new Mapper[0];
+        excludes = PatternMatcher.compile((pExcludes != null) ? pExcludes : new String[0]);
+        includes = PatternMatcher.compile((pIncludes != null) ? pIncludes : new String[] { "**" });
+        mapper = MapperChain.of(pMapper);
     }
 
     public boolean isIncluded( final String pName ) {
-        if (!isIncluded(pName, includes)) {
+        if (!includes.matches(pName)) {
             return false;
         }
-        if (isExcluded(pName, excludes)) {
+        if (excludes.matches(pName)) {
             return false;
         }
         return true;
     }
 
-    private boolean isIncluded( String name, String[] includes ) {
-        for (String include : includes) {
-            if (SelectorUtils.matchPath(include, name)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-
-    private boolean isExcluded( String name, String[] excludes ) {
-        for (String exclude : excludes) {
-            if (SelectorUtils.matchPath(exclude, name)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public void produceDir( final DataConsumer consumer,
                             final String dirName ) throws IOException {
         final String name = dirName.endsWith("/") ? dirName : dirName + "/";
@@ -84,27 +63,23 @@ public abstract class AbstractDataProducer implements DataProducer {
     public void produceFile( final DataConsumer consumer,
                              final File file,
                              final String fileName ) throws IOException {
+        produceFile(consumer, file, fileName, file.length());
+    }
+
+    /**
+     * Produces a file whose size is already known, saving a call to the file system.
+     */
+    public void produceFile( final DataConsumer consumer,
+                             final File file,
+                             final String fileName,
+                             final long size ) throws IOException {
         TarArchiveEntry fileEntry = Producers.defaultFileEntryWithName(fileName);
-        fileEntry.setSize(file.length());
+        fileEntry.setSize(size);
         fileEntry = map(fileEntry);
-        try {
-            Producers.produceInputStreamWithEntry(consumer, new FileInputStream(file), fileEntry);
-        }
-        catch (FileNotFoundException e) {
-            ProducerFileNotFoundException pe = new ProducerFileNotFoundException(e.getMessage(), e);
-            pe.setFilePath(file.getAbsolutePath());
-            throw pe;
-        }
+        consumer.onEachLocalFile(file, fileEntry);
     }
 
     public TarArchiveEntry map( final TarArchiveEntry pEntry ) {
-
-        TarArchiveEntry entry = pEntry;
-
-        for (Mapper mapper : mappers) {
-            entry = mapper.map(entry);
-        }
-
-        return entry;
+        return mapper.map(pEntry);
     }
 }
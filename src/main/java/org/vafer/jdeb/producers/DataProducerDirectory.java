@@ -16,82 +16,294 @@
 package org.vafer.jdeb.producers;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.tools.ant.DirectoryScanner;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.mapping.Mapper;
-import org.vafer.jdeb.utils.Utils;
+import org.vafer.jdeb.utils.PatternMatcher;
 
 /**
  * DataProducer iterating over a directory.
  * For cross-platform permissions and ownerships you probably want to use a Mapper, too.
+ *
+ * The directory is walked in parallel, the content of the next sub directories
+ * is listed ahead while the entries are produced. Only a few directories of
+ * each level are listed ahead, the whole tree is never held in memory. The
+ * entries are produced in pre-order, sorted by name, regardless of the order
+ * of the file system.
+ * Symbolic links are followed, except the ones pointing to a parent directory.
+ * Optionally, the files with several hard links are written once, their other
+ * paths as hard links to the first one.
  */
 public final class DataProducerDirectory extends AbstractDataProducer implements DataProducer {
 
-    private final DirectoryScanner scanner = new DirectoryScanner();
+    /** The number of entries of a directory after the one produced whose sub directories are listed ahead */
+    private static final int LOOK_AHEAD = 8;
+
+    /** The number of threads listing the directories */
+    private static final int LISTING_THREADS = 4;
+
+    private final File dir;
+    private final PatternMatcher includes;
+    private final PatternMatcher excludes;
+    /** Whether the hard links of the directory are kept */
+    private final boolean hardLinks;
 
     public DataProducerDirectory( final File pDir, final String[] pIncludes, final String[] pExcludes, final Mapper[] pMappers ) {
-        super(pIncludes, pExcludes, pMappers);
-        scanner.setBasedir(pDir);
-        scanner.setIncludes(pIncludes);
-        scanner.setExcludes(pExcludes);
-        scanner.setCaseSensitive(true);
-        scanner.setFollowSymlinks(true);
+        this(pDir, pIncludes, pExcludes, pMappers, false);
     }
 
-    public void produce( final DataConsumer pReceiver ) throws IOException {
+    /**
+     * @param pHardLinks whether the files with several hard links are written once, the other paths as hard links
+     */
+    public DataProducerDirectory( final File pDir, final String[] pIncludes, final String[] pExcludes, final Mapper[] pMappers, final boolean pHardLinks ) {
+        super(pIncludes, pExcludes, pMappers);
+        dir = pDir;
+        hardLinks = pHardLinks;
+        includes = PatternMatcher.compile(normalizePatterns(pIncludes != null ? pIncludes : new String[] { "**" }));
+        excludes = PatternMatcher.compile(normalizePatterns(pExcludes != null ? pExcludes : new String[0]));
+    }
 
-        scanner.scan();
+    /**
+     * Normalizes the patterns like Ant does, a trailing slash matches the
+     * whole content of the directory.
+     */
+    private static String[] normalizePatterns( String[] patterns ) {
+        String[] normalized = new String[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            String pattern = patterns[i].replace('\\', '/');
+            normalized[i] = pattern.endsWith("/") ? pattern + "**" : pattern;
+        }
+        return normalized;
+    }
 
-        final File baseDir = scanner.getBasedir();
+    public void produce( final DataConsumer pReceiver ) throws IOException {
+        final Path root = dir.toPath();
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(root, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new FileNotFoundException("The directory " + dir + " does not exist");
+        }
+        if (!attributes.isDirectory()) {
+            throw new IOException("The path " + dir + " is not a directory");
+        }
 
-        for (String dir : scanner.getIncludedDirectories()) {
-            final File file = new File(baseDir, dir);
-            String dirname = getFilename(baseDir, file);
+        final ExecutorService executor = Executors.newFixedThreadPool(LISTING_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "jdeb-lister");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final Listing listing = new Listing(root, "", new Ancestor(getKey(root, attributes), null));
+            produce(pReceiver, listing, new HardLinks(), executor);
+        } finally {
+            // the listings still pending are skipped if the production failed
+            executor.shutdownNow();
+        }
+    }
 
-            if ("".equals(dirname)) {
-                continue;
+    private void produce( final DataConsumer pReceiver, final Listing listing, final HardLinks hardLinks, final ExecutorService executor ) throws IOException {
+        final List<Node> nodes = listing.join(executor);
+        int ahead = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            // the next sub directories are listed while this entry is produced
+            for (; ahead < Math.min(nodes.size(), i + 1 + LOOK_AHEAD); ahead++) {
+                if (nodes.get(ahead).listing != null) {
+                    nodes.get(ahead).listing.submit(executor);
+                }
             }
 
-            if ('/' != File.separatorChar) {
-                dirname = dirname.replace(File.separatorChar, '/');
+            // the nodes produced are released with the content of their directory
+            final Node node = nodes.set(i, null);
+            if (node.directory) {
+                if (isSelected(node.name)) {
+                    produceDir(pReceiver, node.name + "/");
+                }
+                if (node.listing != null) {
+                    produce(pReceiver, node.listing, hardLinks, executor);
+                }
+            } else if (isSelected(node.name)) {
+                produceFile(pReceiver, node, node.size, hardLinks);
             }
+        }
+    }
 
-            if (!isIncluded(dirname)) {
-                continue;
-            }
+    private void produceFile( final DataConsumer pReceiver, final Node node, final long size, final HardLinks hardLinks ) throws IOException {
+        TarArchiveEntry fileEntry = Producers.defaultFileEntryWithName(node.name);
+        fileEntry.setSize(size);
+        fileEntry = map(fileEntry);
+
+        final TarArchiveEntry link = hardLinks.link(node.inode, fileEntry);
+        if (link != null) {
+            pReceiver.onEachLocalLink(link, node.path.toFile(), fileEntry);
+        } else {
+            pReceiver.onEachLocalFile(node.path.toFile(), fileEntry);
+        }
+    }
+
+    private boolean isSelected( final String name ) {
+        return isIncluded(name) && !excludes.matches(name);
+    }
 
-            if (!dirname.endsWith("/")) {
-                dirname += "/";
+    /**
+     * Tells if the content of the directory may be selected, otherwise the
+     * directory isn't walked.
+     */
+    private boolean isWalked( final String name ) {
+        return includes.mayMatchBelow(name) && !excludes.matchesAllBelow(name);
+    }
+
+    /**
+     * Returns the key identifying the directory on the file system, used to
+     * detect the symbolic links pointing to a parent directory.
+     */
+    private static Object getKey( Path path, BasicFileAttributes attributes ) throws IOException {
+        return attributes.fileKey() != null ? attributes.fileKey() : path.toRealPath();
+    }
+
+    /** A parent of the directory listed, identified by its key */
+    private static final class Ancestor {
+        private final Object key;
+        private final Ancestor parent;
+
+        private Ancestor( Object key, Ancestor parent ) {
+            this.key = key;
+            this.parent = parent;
+        }
+
+        private boolean contains( Object key ) {
+            for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+                if (ancestor.key.equals(key)) {
+                    return true;
+                }
             }
+            return false;
+        }
+    }
 
-            produceDir(pReceiver, dirname);
+    /** A file or a directory found in the directory walked */
+    private static final class Node {
+        private final Path path;
+        private final String name;
+        private final boolean directory;
+        /** The size of the file, 0 for the directories and the broken symbolic links */
+        private final long size;
+        /** The content of the directory, null if it isn't walked */
+        private final Listing listing;
+        /** The key of the inode of a file with several links, null otherwise */
+        private final Object inode;
+
+        private Node( Path path, String name, boolean directory, long size, Listing listing, Object inode ) {
+            this.path = path;
+            this.name = name;
+            this.directory = directory;
+            this.size = size;
+            this.listing = listing;
+            this.inode = inode;
         }
+    }
 
+    /**
+     * Lists the content of a directory, sorted by name. The listing runs
+     * once submitted, the listings of the sub directories are only created.
+     */
+    private final class Listing implements Callable<List<Node>> {
 
-        for (String f : scanner.getIncludedFiles()) {
-            final File file = new File(baseDir, f);
-            String filename = getFilename(baseDir, file);
+        private final Path path;
+        private final String prefix;
+        private final Ancestor ancestors;
+        /** The nodes listed, null until the listing is submitted */
+        private Future<List<Node>> nodes;
 
-            if ('/' != File.separatorChar) {
-                filename = filename.replace(File.separatorChar, '/');
-            }
+        private Listing( Path path, String prefix, Ancestor ancestors ) {
+            this.path = path;
+            this.prefix = prefix;
+            this.ancestors = ancestors;
+        }
 
-            if (!isIncluded(filename)) {
-                continue;
+        private void submit( ExecutorService executor ) {
+            if (nodes == null) {
+                nodes = executor.submit(this);
             }
+        }
 
-            produceFile(pReceiver, file, filename);
+        /**
+         * Waits for the nodes of the directory, the listing is submitted first if it wasn't yet.
+         */
+        private List<Node> join( ExecutorService executor ) throws IOException {
+            submit(executor);
+            try {
+                return nodes.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while listing " + path);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Could not list " + path, e.getCause());
+            }
         }
-    }
 
-    private String getFilename( File root, File file ) {
+        @Override
+        public List<Node> call() throws IOException {
+            final List<Path> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path child : stream) {
+                    children.add(child);
+                }
+            }
+            children.sort(Comparator.comparing(child -> child.getFileName().toString()));
 
-        final String relativeFilename = file.getAbsolutePath().substring(root.getAbsolutePath().length());
+            final List<Node> nodes = new ArrayList<>(children.size());
+            for (Path child : children) {
+                final String name = prefix + child.getFileName().toString();
 
-        return Utils.stripLeadingSlash(relativeFilename);
-    }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    if (!Files.isSymbolicLink(child)) {
+                        throw e;
+                    }
+                    // broken link, reported when the file is consumed
+                    nodes.add(new Node(child, name, false, 0, null, null));
+                    continue;
+                }
 
-}
\ No newline at end of file
+                if (attributes.isDirectory()) {
+                    final Object key = getKey(child, attributes);
+                    if (ancestors.contains(key)) {
+                        // link to a parent directory
+                        continue;
+                    }
+                    Listing listing = null;
+                    if (isWalked(name)) {
+                        listing = new Listing(child, name + "/", new Ancestor(key, ancestors));
+                    }
+                    nodes.add(new Node(child, name, true, 0, listing, null));
+                } else if (attributes.isRegularFile()) {
+                    nodes.add(new Node(child, name, false, attributes.size(), null, hardLinks ? HardLinks.getInode(child) : null));
+                }
+            }
+            return nodes;
+        }
+    }
+}
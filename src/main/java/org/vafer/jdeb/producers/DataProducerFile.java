@@ -16,7 +16,6 @@
 package org.vafer.jdeb.producers;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
@@ -54,7 +53,7 @@ public final class DataProducerFile extends AbstractDataProducer implements Data
 
         entry.setSize(file.length());
 
-        Producers.produceInputStreamWithEntry(pReceiver, new FileInputStream(file), entry);
+        pReceiver.onEachLocalFile(file, entry);
     }
 
 }
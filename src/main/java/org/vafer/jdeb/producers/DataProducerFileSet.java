@@ -16,9 +16,7 @@
 package org.vafer.jdeb.producers;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarConstants;
@@ -32,14 +30,25 @@ import org.vafer.jdeb.utils.SymlinkUtils;
 
 /**
  * DataProducer providing data from an Ant fileset. TarFileSets are also
- * supported with their permissions.
+ * supported with their permissions. Optionally, the files with several hard
+ * links are written once, their other paths as hard links to the first one.
  */
 public final class DataProducerFileSet implements DataProducer {
 
     private final FileSet fileset;
+    /** Whether the hard links of the fileset are kept */
+    private final boolean hardLinks;
 
     public DataProducerFileSet( final FileSet fileset ) {
+        this(fileset, false);
+    }
+
+    /**
+     * @param hardLinks whether the files with several hard links are written once, the other paths as hard links
+     */
+    public DataProducerFileSet( final FileSet fileset, final boolean hardLinks ) {
         this.fileset = fileset;
+        this.hardLinks = hardLinks;
     }
 
     public void produce( final DataConsumer pReceiver ) throws IOException {
@@ -88,32 +97,36 @@ public final class DataProducerFileSet implements DataProducer {
             pReceiver.onEachDir(entry);
         }
 
+        final HardLinks links = new HardLinks();
         for (String filename : scanner.getIncludedFiles()) {
             final String name = filename.replace('\\', '/');
             final File file = new File(basedir, name);
 
-            try (InputStream inputStream = new FileInputStream(file)) {
-                final String entryName = "".equals(fullpath) ? prefix + "/" + name : fullpath;
+            final String entryName = "".equals(fullpath) ? prefix + "/" + name : fullpath;
 
-                final File entryPath = new File(entryName);
+            final File entryPath = new File(entryName);
 
-                final boolean symbolicLink = SymlinkUtils.isSymbolicLink(entryPath);
-                final TarArchiveEntry e;
-                if (symbolicLink) {
-                    e = new TarArchiveEntry(entryName, TarConstants.LF_SYMLINK);
-                    e.setLinkName(SymlinkUtils.readSymbolicLink(entryPath));
-                } else {
-                    e = new TarArchiveEntry(entryName, true);
-                }
-
-                e.setUserId(uid);
-                e.setGroupId(gid);
-                e.setUserName(user);
-                e.setGroupName(group);
-                e.setMode(filemode);
-                e.setSize(file.length());
+            final boolean symbolicLink = SymlinkUtils.isSymbolicLink(entryPath);
+            final TarArchiveEntry e;
+            if (symbolicLink) {
+                e = new TarArchiveEntry(entryName, TarConstants.LF_SYMLINK);
+                e.setLinkName(SymlinkUtils.readSymbolicLink(entryPath));
+            } else {
+                e = new TarArchiveEntry(entryName, true);
+            }
 
-                pReceiver.onEachFile(inputStream, e);
+            e.setUserId(uid);
+            e.setGroupId(gid);
+            e.setUserName(user);
+            e.setGroupName(group);
+            e.setMode(filemode);
+            e.setSize(file.length());
+
+            final TarArchiveEntry link = symbolicLink || !hardLinks ? null : links.link(HardLinks.getInode(file.toPath()), e);
+            if (link != null) {
+                pReceiver.onEachLocalLink(link, file, e);
+            } else {
+                pReceiver.onEachLocalFile(file, e);
             }
         }
     }
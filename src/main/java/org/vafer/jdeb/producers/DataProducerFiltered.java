@@ -0,0 +1,125 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.producers;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.utils.ContentClassifier;
+import org.vafer.jdeb.utils.VariableResolver;
+import org.vafer.jdeb.utils.VariableTemplate;
+
+/**
+ * DataProducer replacing the variables in the files of another producer,
+ * like in the control files. The files are filtered while they are read,
+ * the line endings are kept. The filtered content is buffered to know its
+ * size, in memory for the small files and in a temporary file otherwise.
+ * The files guessed binary from their first bytes are left unchanged.
+ */
+public final class DataProducerFiltered implements DataProducer {
+
+    /** The size of the filtered files kept in memory, larger files are buffered on disk */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** The number of bytes read at the beginning of the files to tell the binary ones */
+    private static final int SNIFFED_SIZE = 8000;
+
+    private final DataProducer producer;
+    private final VariableResolver resolver;
+    private final Charset encoding;
+    private final String openToken;
+    private final String closeToken;
+
+    public DataProducerFiltered( final DataProducer producer, final VariableResolver resolver, final Charset encoding, final String openToken, final String closeToken ) {
+        this.producer = producer;
+        this.resolver = resolver;
+        this.encoding = encoding;
+        this.openToken = openToken;
+        this.closeToken = closeToken;
+    }
+
+    public void produce( final DataConsumer pReceiver ) throws IOException {
+        producer.produce(new DataConsumer() {
+            public void onEachDir( TarArchiveEntry dirEntry ) throws IOException {
+                pReceiver.onEachDir(dirEntry);
+            }
+
+            public void onEachFile( InputStream input, TarArchiveEntry fileEntry ) throws IOException {
+                if (input == null) {
+                    // only the entry is consumed
+                    pReceiver.onEachFile(null, fileEntry);
+                    return;
+                }
+
+                if (!input.markSupported()) {
+                    input = new BufferedInputStream(input);
+                }
+                final byte[] head = new byte[SNIFFED_SIZE];
+                input.mark(head.length);
+                final int length = IOUtils.read(input, head);
+                input.reset();
+                final ContentClassifier classifier = new ContentClassifier();
+                classifier.update(head, 0, length);
+                if (classifier.isBinary()) {
+                    // decoding would corrupt the binary files
+                    pReceiver.onEachFile(input, fileEntry);
+                    return;
+                }
+
+                final DeferredFileOutputStream buffer = DeferredFileOutputStream.builder()
+                    .setThreshold(BUFFER_SIZE)
+                    .setPrefix("jdeb")
+                    .get();
+                try {
+                    try (Writer writer = new OutputStreamWriter(buffer, encoding)) {
+                        VariableTemplate.replaceVariables(new InputStreamReader(input, encoding), writer, resolver, openToken, closeToken);
+                    }
+                    fileEntry.setSize(buffer.getByteCount());
+
+                    try (InputStream filtered = buffer.toInputStream()) {
+                        pReceiver.onEachFile(filtered, fileEntry);
+                    }
+                } finally {
+                    if (!buffer.isInMemory()) {
+                        Files.deleteIfExists(buffer.getFile().toPath());
+                    }
+                }
+            }
+
+            public void onEachLink( TarArchiveEntry linkEntry ) throws IOException {
+                pReceiver.onEachLink(linkEntry);
+            }
+
+            public void onEachLocalLink( TarArchiveEntry linkEntry, File file, TarArchiveEntry fileEntry ) throws IOException {
+                // the linked file is filtered again, a copy may be written for the link
+                onEachLocalFile(file, fileEntry);
+            }
+        });
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.producers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+
+/**
+ * Package-private tracker of the files of the file system with several
+ * links, identified by their device and inode. The first path produced for
+ * an inode is written with its content, the following ones as hard links
+ * to it.
+ */
+final class HardLinks {
+
+    /** The first entry produced for each inode, with the attributes of the links */
+    private final Map<Object, TarArchiveEntry> targets = new HashMap<>();
+
+    /**
+     * Returns the key identifying the inode of the file, or null if the
+     * file has a single link or if the file system doesn't tell. A symbolic
+     * link isn't followed, the file it points to is written as a copy.
+     */
+    static Object getInode( final Path path ) {
+        if (!path.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+            return null;
+        }
+        final Map<String, Object> attributes;
+        try {
+            attributes = Files.readAttributes(path, "unix:nlink,dev,ino", LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            // missing file or broken link, reported when the file is consumed
+            return null;
+        }
+        final Object links = attributes.get("nlink");
+        if (!(links instanceof Integer) || (Integer) links < 2) {
+            return null;
+        }
+        return Arrays.asList(attributes.get("dev"), attributes.get("ino"));
+    }
+
+    /**
+     * Returns the hard link to write instead of the file entry, or null if
+     * the file has to be written with its content. A file is only linked to
+     * an entry with the same mode and ownership, the attributes of an inode
+     * being shared by all its links.
+     *
+     * @param inode the key of the inode of the file, null if it has a single link
+     * @param fileEntry the entry of the file, mapped
+     */
+    TarArchiveEntry link( final Object inode, final TarArchiveEntry fileEntry ) {
+        if (inode == null) {
+            return null;
+        }
+
+        final TarArchiveEntry link = new TarArchiveEntry(fileEntry.getName(), TarConstants.LF_LINK);
+        link.setMode(fileEntry.getMode());
+        link.setUserId(fileEntry.getLongUserId());
+        link.setUserName(fileEntry.getUserName());
+        link.setGroupId(fileEntry.getLongGroupId());
+        link.setGroupName(fileEntry.getGroupName());
+        link.setModTime(fileEntry.getModTime());
+
+        final TarArchiveEntry target = targets.putIfAbsent(inode, link);
+        if (target == null || !hasSameAttributes(target, link)) {
+            return null;
+        }
+        // the entries produced may be renamed by the consumer, the copies kept aren't
+        link.setLinkName(target.getName());
+        return link;
+    }
+
+    private static boolean hasSameAttributes( final TarArchiveEntry a, final TarArchiveEntry b ) {
+        return a.getMode() == b.getMode()
+            && a.getLongUserId() == b.getLongUserId()
+            && a.getLongGroupId() == b.getLongGroupId()
+            && Objects.equals(a.getUserName(), b.getUserName())
+            && Objects.equals(a.getGroupName(), b.getGroupName());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.signing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.vafer.jdeb.utils.Utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Cache of the signing keys decrypted, shared by all the packages signed in
+ * the JVM (the modules of a Maven build, the Ant tasks of a build). A keyring
+ * is parsed and a key decrypted only once, until the keyring file is
+ * modified or the keys are evicted explicitly.
+ *
+ * The keys are cached by keyring, key identifier and digest of the
+ * passphrase, a key is never returned for another passphrase.
+ */
+public final class PGPKeyCache {
+
+    /** A secret key and its private key decrypted */
+    private static final class Keys {
+        private final PGPSecretKey secretKey;
+        private final PGPPrivateKey privateKey;
+
+        private Keys(PGPSecretKey secretKey, PGPPrivateKey privateKey) {
+            this.secretKey = secretKey;
+            this.privateKey = privateKey;
+        }
+    }
+
+    /** The keys decrypted, by keyring file and version, key and passphrase */
+    private static final Map<String, Keys> CACHE = new HashMap<>();
+
+    private PGPKeyCache() {
+    }
+
+    /**
+     * Returns a signer with the specified key of the keyring, decrypted with
+     * the passphrase the first time it's used.
+     *
+     * @param keyring    the file containing the keyring collection
+     * @param keyId      the 4 bytes identifier of the key
+     * @param passphrase the passphrase of the key
+     * @param digest     the code of the digest algorithm of the signatures
+     */
+    public static PGPSigner getSigner(File keyring, String keyId, String passphrase, int digest) throws IOException, PGPException {
+        final String file = keyring.getCanonicalPath() + "\n";
+        final String version = file + keyring.lastModified() + "\n" + keyring.length() + "\n";
+        final String cacheKey = version + keyId.toLowerCase() + "\n" + hash(passphrase);
+
+        Keys keys;
+        synchronized (CACHE) {
+            keys = CACHE.get(cacheKey);
+            if (keys == null) {
+                keys = load(keyring, keyId, passphrase);
+                // the keys of the previous versions of the keyring
+                CACHE.keySet().removeIf(key -> key.startsWith(file) && !key.startsWith(version));
+                CACHE.put(cacheKey, keys);
+            }
+        }
+
+        return new PGPSigner(keys.secretKey, keys.privateKey, digest);
+    }
+
+    /**
+     * Removes the keys of the keyring from the cache.
+     */
+    public static void evict(File keyring) throws IOException {
+        final String file = keyring.getCanonicalPath() + "\n";
+        synchronized (CACHE) {
+            CACHE.keySet().removeIf(key -> key.startsWith(file));
+        }
+    }
+
+    /**
+     * Removes all the keys from the cache.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static Keys load(File keyring, String keyId, String passphrase) throws IOException, PGPException {
+        final PGPSecretKey secretKey;
+        try (InputStream input = new FileInputStream(keyring)) {
+            secretKey = PGPSigner.getSecretKey(input, keyId);
+        }
+        if (secretKey == null) {
+            throw new PGPException(String.format("Specified key %s does not exist in key ring %s", keyId, keyring));
+        }
+        return new Keys(secretKey, PGPSigner.extractPrivateKey(secretKey, passphrase));
+    }
+
+    /**
+     * Returns the digest of the passphrase, the passphrase itself isn't kept.
+     */
+    private static String hash(String passphrase) {
+        try {
+            return Utils.toHex(MessageDigest.getInstance("SHA-256").digest(passphrase.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -92,10 +92,26 @@ public class PGPSigner {
         {
             throw new PGPException(String.format("Specified key %s does not exist in key ring %s", keyId, keyring));
         }
-        privateKey = secretKey.extractPrivateKey(new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider()).build(passphrase.toCharArray()));
+        privateKey = extractPrivateKey(secretKey, passphrase);
         this.digest = digest;
     }
 
+    /**
+     * Creates a signer with a key already decrypted.
+     */
+    PGPSigner(PGPSecretKey secretKey, PGPPrivateKey privateKey, int digest) {
+        this.secretKey = secretKey;
+        this.privateKey = privateKey;
+        this.digest = digest;
+    }
+
+    /**
+     * Decrypts the private key with the passphrase.
+     */
+    static PGPPrivateKey extractPrivateKey(PGPSecretKey secretKey, String passphrase) throws PGPException {
+        return secretKey.extractPrivateKey(new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider()).build(passphrase.toCharArray()));
+    }
+
     /**
      * Creates a clear sign signature over the input data. (Not detached)
      *
@@ -167,7 +183,7 @@ public class PGPSigner {
      * @param input the input stream containing the keyring collection
      * @param keyId the 4 bytes identifier of the key
      */
-    private PGPSecretKey getSecretKey(InputStream input, String keyId) throws IOException, PGPException {
+    static PGPSecretKey getSecretKey(InputStream input, String keyId) throws IOException, PGPException {
         PGPSecretKeyRingCollection keyrings = new PGPSecretKeyRingCollection(PGPUtil.getDecoderStream(input), new JcaKeyFingerprintCalculator());
 
         Iterator<PGPSecretKeyRing> rIt = keyrings.getKeyRings();
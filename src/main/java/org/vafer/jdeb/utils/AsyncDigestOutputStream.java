@@ -0,0 +1,178 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Output stream computing the digests and the size of the content written
+ * to the underlying stream. The content is written on the calling thread,
+ * the digests are updated on a helper thread with a copy of the content.
+ *
+ * The copies are made in a few blocks reused once digested, the writer only
+ * waits for the helper thread if all the blocks are being digested.
+ */
+public class AsyncDigestOutputStream extends FilterOutputStream {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    /** The number of blocks filled or digested at the same time */
+    private static final int BLOCKS = 4;
+
+    private final MessageDigest[] digests;
+    private final ExecutorService executor;
+    /** The blocks digested, ready to be filled again */
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BLOCKS);
+    private int allocated;
+    /** The digestion of the last block submitted */
+    private Future<?> last;
+
+    private byte[] block;
+    private int count;
+    private long size;
+
+    private String[] hexDigests;
+    private boolean closed;
+
+    public AsyncDigestOutputStream(OutputStream out, MessageDigest... digests) {
+        super(out);
+        this.digests = digests;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jdeb-digest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.block = new byte[BLOCK_SIZE];
+        this.allocated = 1;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        block[count++] = (byte) b;
+        size++;
+        if (count == BLOCK_SIZE) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        size += len;
+        while (len > 0) {
+            int n = Math.min(len, BLOCK_SIZE - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == BLOCK_SIZE) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Closes the underlying stream and waits for the digests of the content.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.flush();
+            if (count > 0) {
+                digest(block, count);
+            }
+            if (last != null) {
+                last.get();
+            }
+            hexDigests = new String[digests.length];
+            for (int i = 0; i < digests.length; i++) {
+                hexDigests[i] = Utils.toHex(digests[i].digest());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while computing the digests");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not compute the digests", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the size of the content written.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the hexadecimal digest of the content, once the stream is closed.
+     *
+     * @param index the index of the digest in the digests of the constructor
+     */
+    public String getHexDigest(int index) {
+        if (hexDigests == null) {
+            throw new IllegalStateException("The digests are computed once the stream is closed");
+        }
+        return hexDigests[index];
+    }
+
+    private void submit() throws IOException {
+        digest(block, count);
+
+        block = free.poll();
+        if (block == null) {
+            if (allocated < BLOCKS) {
+                block = new byte[BLOCK_SIZE];
+                allocated++;
+            } else {
+                try {
+                    block = free.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while computing the digests");
+                }
+            }
+        }
+        count = 0;
+    }
+
+    private void digest(final byte[] input, final int length) {
+        last = executor.submit(() -> {
+            for (MessageDigest digest : digests) {
+                digest.update(input, 0, length);
+            }
+            free.add(input);
+        });
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+/**
+ * Guesses the type of a content from its bytes: the byte order mark, the
+ * shebang of a script or the magic number of an ELF binary at its beginning,
+ * and its line endings.
+ *
+ * The headers are matched by primitive state machines over the first bytes
+ * only, the remaining bytes are counted by class with a lookup table. The
+ * counters of all the classes are packed in a single long while a buffer is
+ * counted, one addition per byte.
+ */
+public final class ContentClassifier {
+
+    /** The number of bytes at the beginning of the content where the headers are searched */
+    private static final int HEADER_WINDOW = 10;
+
+    private static final int ASCII = 0;
+    private static final int NON_ASCII = 1;
+    private static final int CR = 2;
+    private static final int LF = 3;
+    private static final int ZERO = 4;
+
+    /** The number of bits of each counter packed in a long */
+    private static final int PACKED_BITS = 12;
+    private static final long PACKED_MASK = (1L << PACKED_BITS) - 1;
+    /** The number of bytes counted before the packed counters overflow */
+    private static final int PACKED_LIMIT = (int) PACKED_MASK;
+
+    /** The class of each byte */
+    private static final byte[] CLASSES = new byte[256];
+
+    /** The increment of the packed counters for each byte */
+    private static final long[] INCREMENTS = new long[256];
+
+    static {
+        for (int c = 0; c < CLASSES.length; c++) {
+            if (c == '\n') {
+                CLASSES[c] = LF;
+            } else if (c == '\r') {
+                CLASSES[c] = CR;
+            } else if (c >= ' ' && c <= '~') {
+                CLASSES[c] = ASCII;
+            } else if (c == 0) {
+                CLASSES[c] = ZERO;
+            } else {
+                CLASSES[c] = NON_ASCII;
+            }
+            INCREMENTS[c] = 1L << (CLASSES[c] * PACKED_BITS);
+        }
+    }
+
+    /**
+     * Byte Order Marks
+     */
+    private enum BOM {
+        NONE(null),
+        UTF8("UTF-8", 0xEF, 0xBB, 0xBF),
+        UTF16LE("UTF-16LE", 0xFF, 0xFE),
+        UTF16BE("UTF-16BE", 0xFE, 0xFF);
+
+        final int[] sequence;
+        final String encoding;
+
+        BOM( String encoding, int... sequence ) {
+            this.encoding = encoding;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Shebang for shell scripts in various encodings.
+     */
+    private enum Shell {
+        NONE,
+        ASCII(0x23, 0x21),
+        UTF16BE(0x00, 0x23, 0x00, 0x21),
+        UTF16LE(0x23, 0x00, 0x21, 0x00);
+
+        final int[] header;
+
+        Shell( int... header ) {
+            this.header = header;
+        }
+    }
+
+    /** The magic number of the ELF binaries */
+    private static final int[] ELF_MAGIC = { 0x7F, 'E', 'L', 'F' };
+
+    private static final BOM[] BOMS = BOM.values();
+    private static final Shell[] SHELLS = Shell.values();
+
+    /** The number of bytes of each header matched so far, by ordinal */
+    private final int[] bomPositions = new int[BOMS.length];
+    private final int[] shellPositions = new int[SHELLS.length];
+
+    private int elfPosition;
+
+    private BOM bom = BOM.NONE;
+    private Shell shell = Shell.NONE;
+
+    /** The number of bytes of each class */
+    private final long[] counts = new long[5];
+    private long total;
+
+    /**
+     * Classifies the next byte of the content.
+     */
+    public void update( int c ) {
+        c &= 0xFF;
+        if (total < HEADER_WINDOW) {
+            matchHeaders(c);
+        }
+        total++;
+        counts[CLASSES[c]]++;
+    }
+
+    /**
+     * Classifies the next bytes of the content.
+     */
+    public void update( byte[] b, int off, int len ) {
+        int i = off;
+        final int end = off + len;
+        while (i < end && total < HEADER_WINDOW) {
+            update(b[i++]);
+        }
+
+        total += end - i;
+        while (i < end) {
+            final int limit = Math.min(end, i + PACKED_LIMIT);
+            long packed = 0;
+            for (; i < limit; i++) {
+                packed += INCREMENTS[b[i] & 0xFF];
+            }
+            for (int c = 0; c < counts.length; c++) {
+                counts[c] += (packed >>> (c * PACKED_BITS)) & PACKED_MASK;
+            }
+        }
+    }
+
+    private void matchHeaders( int c ) {
+        if (elfPosition == total && elfPosition < ELF_MAGIC.length && c == ELF_MAGIC[elfPosition]) {
+            elfPosition++;
+        }
+
+        if (shell == Shell.NONE) {
+            for (Shell candidate : SHELLS) {
+                final int position = shellPositions[candidate.ordinal()];
+                if (position < candidate.header.length) {
+                    shellPositions[candidate.ordinal()] = c == candidate.header[position] ? position + 1 : 0;
+                } else {
+                    shell = candidate;
+                }
+            }
+        }
+
+        if (bom == BOM.NONE) {
+            for (BOM candidate : BOMS) {
+                final int position = bomPositions[candidate.ordinal()];
+                if (position < candidate.sequence.length) {
+                    bomPositions[candidate.ordinal()] = c == candidate.sequence[position] && position == total ? position + 1 : 0;
+                } else {
+                    bom = candidate;
+                }
+            }
+        }
+    }
+
+    public boolean hasBom() {
+        return bom != BOM.NONE;
+    }
+
+    public boolean isShell() {
+        return shell != Shell.NONE;
+    }
+
+    public boolean isElf() {
+        return elfPosition == ELF_MAGIC.length;
+    }
+
+    /**
+     * Tells if the content is binary: an ELF binary, or a content with null
+     * bytes that isn't text in UTF-16.
+     */
+    public boolean isBinary() {
+        return isElf() || counts[ZERO] > 0 && getEncoding() == null;
+    }
+
+    public boolean hasUnixLineEndings() {
+        return counts[CR] == 0;
+    }
+
+    public String getEncoding() {
+        String encoding = bom.encoding;
+
+        if (encoding == null) {
+            // guess the encoding from the shebang
+            if (shell == Shell.UTF16BE) {
+                encoding = BOM.UTF16BE.encoding;
+            } else if (shell == Shell.UTF16LE) {
+                encoding = BOM.UTF16LE.encoding;
+            }
+        }
+
+        return encoding;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        sb.append("total=").append(total);
+        sb.append(",noascii=").append(counts[NON_ASCII]);
+        sb.append(",ascii=").append(counts[ASCII]);
+        sb.append(",cr=").append(counts[CR]);
+        sb.append(",lf=").append(counts[LF]);
+        sb.append(",zero=").append(counts[ZERO]);
+        sb.append("}");
+        return sb.toString();
+    }
+}
@@ -16,13 +16,13 @@
 
 package org.vafer.jdeb.utils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.List;
 
 public class FilteredFile {
 
@@ -31,7 +31,7 @@ public class FilteredFile {
 
     private String openToken;
     private String closeToken;
-    private List<String> lines = new ArrayList<>();
+    private final StringWriter content = new StringWriter();
 
     @Deprecated
     public FilteredFile(InputStream in, VariableResolver resolver) throws IOException {
@@ -59,23 +59,24 @@ public class FilteredFile {
     }
 
     private void parse(InputStream in, VariableResolver resolver, Charset encoding) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, encoding))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (resolver != null) {
-                    lines.add(Utils.replaceVariables(resolver, line, openToken, closeToken));
-                } else {
-                    lines.add(line);
-                }
-            }
+        filter(in, content, resolver, encoding, openToken, closeToken);
+    }
+
+    /**
+     * Copies the lines of the stream to the writer, with the variables
+     * replaced and the Unix line endings, while the stream is read.
+     *
+     * @param in       the stream filtered, closed once read
+     * @param out      the writer receiving the lines
+     * @param resolver the resolver of the variables, null to keep the lines as is
+     */
+    public static void filter(InputStream in, Writer out, VariableResolver resolver, Charset encoding, String openToken, String closeToken) throws IOException {
+        try (Reader reader = new InputStreamReader(in, encoding)) {
+            VariableTemplate.filter(reader, out, resolver, openToken, closeToken);
         }
     }
 
     public String toString() {
-        StringBuilder builder = new StringBuilder();
-        for (String line : lines) {
-            builder.append(line).append('\n');
-        }
-        return builder.toString();
+        return content.toString();
     }
 }
@@ -22,7 +22,7 @@ public class PGPSignatureOutputStream extends OutputStream {
     }
 
     public void write( int b ) throws IOException {
-        signatureGenerator.update(new byte[] { (byte)b });
+        signatureGenerator.update((byte) b);
     }
 
     public void write( byte[] b ) throws IOException {
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Output stream splitting the input into fixed-size blocks that are
+ * compressed on a pool of worker threads. The compressed blocks are
+ * written to the underlying stream in their original order.
+ *
+ * At most twice as many blocks as threads are in flight, which bounds the
+ * memory used regardless of the size of the input.
+ */
+abstract class ParallelBlockOutputStream extends FilterOutputStream {
+
+    private final int blockSize;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] block;
+    private int count;
+    private boolean closed;
+
+    protected ParallelBlockOutputStream(OutputStream out, int threads, int blockSize, final String threadName) {
+        super(out);
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive: " + threads);
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.maxPending = threads * 2;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.block = new byte[blockSize];
+    }
+
+    /**
+     * Prepares the compression of a block. This is called on the writing
+     * thread in the order of the input, the returned task is then run on
+     * a worker thread.
+     *
+     * @param input  the content of the block, owned by the task
+     * @param length the number of bytes in the block
+     * @param last   whether this is the last block of the stream
+     * @return the task compressing the block, or null to skip the block
+     */
+    protected abstract Callable<byte[]> prepare(byte[] input, int length, boolean last) throws IOException;
+
+    /**
+     * Writes the end of the stream once all the blocks have been written.
+     */
+    protected abstract void finish() throws IOException;
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[count++] = (byte) b;
+        if (count == blockSize) {
+            submit(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == blockSize) {
+                submit(false);
+            }
+        }
+    }
+
+    /**
+     * Flushes the blocks already compressed. The pending partial block is
+     * kept to not affect the output.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                drain();
+            }
+            finish();
+            out.flush();
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        Callable<byte[]> task = prepare(block, count, last);
+        if (task != null) {
+            pending.add(executor.submit(task));
+        }
+
+        block = new byte[blockSize];
+        count = 0;
+
+        while (pending.size() >= maxPending) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        Future<byte[]> future = pending.removeFirst();
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not compress block", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream compressing fixed-size blocks of the input on a pool
+ * of worker threads, similar to pigz.
+ *
+ * Each block is deflated independently with the last 32 KiB of the previous
+ * block as preset dictionary and terminated with a sync flush, so the
+ * concatenated blocks form one regular deflate stream inside a single gzip
+ * member. The output only depends on the input, the block size and the
+ * compression level, it is identical whatever the number of threads.
+ */
+public class ParallelGzipOutputStream extends ParallelBlockOutputStream {
+
+    /** The default size of the blocks compressed in parallel */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    /** The size of the deflate window */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private final int level;
+    private final CRC32 crc = new CRC32();
+
+    private byte[] previous;
+    private int previousCount;
+    private long total;
+
+    public ParallelGzipOutputStream(OutputStream out, int threads) throws IOException {
+        this(out, threads, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize, int level) throws IOException {
+        super(out, threads, blockSize, "jdeb-gzip");
+        this.level = level;
+
+        // magic, deflate, no flags, no mtime, no extra flags, unknown OS
+        out.write(new byte[] { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff });
+    }
+
+    @Override
+    protected Callable<byte[]> prepare(final byte[] input, final int length, final boolean last) {
+        final byte[] dictionary = previous;
+        final int dictionaryOffset = Math.max(0, previousCount - DICTIONARY_SIZE);
+        final int dictionaryLength = previousCount - dictionaryOffset;
+
+        crc.update(input, 0, length);
+        total += length;
+
+        previous = input;
+        previousCount = length;
+
+        return () -> deflate(input, length, dictionary, dictionaryOffset, dictionaryLength, last);
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        writeInt((int) crc.getValue());
+        writeInt((int) total);
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+
+    private byte[] deflate(byte[] input, int length, byte[] dictionary, int dictionaryOffset, int dictionaryLength, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null && dictionaryLength > 0) {
+                deflater.setDictionary(dictionary, dictionaryOffset, dictionaryLength);
+            }
+            deflater.setInput(input, 0, length);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer, 0, buffer.length);
+                    output.write(buffer, 0, n);
+                }
+            } else {
+                // the sync flush is complete once the buffer isn't filled anymore
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    output.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.tukaani.xz.FinishableOutputStream;
+import org.tukaani.xz.FinishableWrapperOutputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.UnsupportedOptionsException;
+import org.tukaani.xz.XZ;
+import org.tukaani.xz.check.CRC32;
+import org.tukaani.xz.check.CRC64;
+
+/**
+ * Xz output stream compressing fixed-size blocks of the input on a pool of
+ * worker threads, similar to <code>xz -T</code>.
+ *
+ * Every block is an independent LZMA2 block of a single xz stream with
+ * CRC64 checks. The block headers record the compressed and uncompressed
+ * sizes and the stream ends with the usual index, so the result can be read
+ * by any xz decoder (and decompressed in parallel by the recent ones). The
+ * output only depends on the input, the block size and the preset.
+ */
+public class ParallelXzOutputStream extends ParallelBlockOutputStream {
+
+    /** The filter id of LZMA2 */
+    private static final int FILTER_LZMA2 = 0x21;
+
+    /** The size of a CRC64 check */
+    private static final int CHECK_SIZE = 8;
+
+    /** The stream flags selecting CRC64 checks */
+    private static final byte[] STREAM_FLAGS = { 0x00, (byte) XZ.CHECK_CRC64 };
+
+    private static final class Record {
+        private final long uncompressedSize;
+        private long unpaddedSize;
+
+        private Record(long uncompressedSize) {
+            this.uncompressedSize = uncompressedSize;
+        }
+    }
+
+    private final LZMA2Options options;
+    private final List<Record> records = new ArrayList<>();
+
+    public ParallelXzOutputStream(OutputStream out, int threads) throws IOException {
+        this(out, threads, 0, LZMA2Options.PRESET_DEFAULT);
+    }
+
+    /**
+     * @param out       the stream receiving the compressed data
+     * @param threads   the number of compression threads
+     * @param blockSize the size of the blocks, 0 for three times the dictionary size like xz
+     * @param preset    the compression preset (0-9)
+     */
+    public ParallelXzOutputStream(OutputStream out, int threads, int blockSize, int preset) throws IOException {
+        this(out, threads, blockSize, new LZMA2Options(preset));
+    }
+
+    private ParallelXzOutputStream(OutputStream out, int threads, int blockSize, LZMA2Options options) throws IOException {
+        super(out, threads, blockSize > 0 ? blockSize : defaultBlockSize(options), "jdeb-xz");
+        this.options = options;
+
+        // a block never references more data than it contains
+        if (blockSize > 0 && blockSize < options.getDictSize()) {
+            options.setDictSize(Math.max(blockSize, LZMA2Options.DICT_SIZE_MIN));
+        }
+
+        out.write(XZ.HEADER_MAGIC);
+        out.write(STREAM_FLAGS);
+        writeCrc32(out, STREAM_FLAGS, 0, STREAM_FLAGS.length);
+    }
+
+    /**
+     * Returns the default block size for the specified options, three times
+     * the dictionary size like xz does.
+     */
+    private static int defaultBlockSize(LZMA2Options options) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, 3L * options.getDictSize());
+    }
+
+    @Override
+    protected Callable<byte[]> prepare(final byte[] input, final int length, boolean last) {
+        if (length == 0) {
+            // empty streams are valid, there is no need for an empty block
+            return null;
+        }
+
+        final Record record = new Record(length);
+        records.add(record);
+
+        return () -> compress(input, length, record);
+    }
+
+    private byte[] compress(byte[] input, int length, Record record) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(length / 4 + 64);
+        FinishableOutputStream lzma2 = options.getOutputStream(new FinishableWrapperOutputStream(data));
+        lzma2.write(input, 0, length);
+        lzma2.finish();
+
+        byte[] header = createBlockHeader(data.size(), length);
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream(header.length + data.size() + 3 + CHECK_SIZE);
+        block.write(header);
+        data.writeTo(block);
+        writePadding(block, data.size());
+
+        CRC64 check = new CRC64();
+        check.update(input, 0, length);
+        block.write(check.finish());
+
+        record.unpaddedSize = header.length + data.size() + CHECK_SIZE;
+
+        return block.toByteArray();
+    }
+
+    private byte[] createBlockHeader(long compressedSize, long uncompressedSize) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(32);
+        header.write(0); // header size, set below
+
+        // one filter, compressed and uncompressed sizes present
+        header.write(0x40 | 0x80);
+        writeVarInt(header, compressedSize);
+        writeVarInt(header, uncompressedSize);
+
+        // LZMA2 filter flags
+        writeVarInt(header, FILTER_LZMA2);
+        writeVarInt(header, 1);
+        header.write(getDictSizeProperty(options.getDictSize()));
+
+        writePadding(header, header.size());
+
+        byte[] bytes = header.toByteArray();
+        bytes[0] = (byte) ((bytes.length + 4) / 4 - 1);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.length + 4);
+        result.write(bytes);
+        writeCrc32(result, bytes, 0, bytes.length);
+        return result.toByteArray();
+    }
+
+    /**
+     * Returns the encoded dictionary size of the LZMA2 filter properties,
+     * the smallest value of the form 2^n or 2^n + 2^(n-1) not less than the
+     * dictionary size.
+     */
+    private static int getDictSizeProperty(int dictSize) throws UnsupportedOptionsException {
+        for (int property = 0; property < 40; property++) {
+            long size = (2L | (property & 1)) << (property / 2 + 11);
+            if (size >= dictSize) {
+                return property;
+            }
+        }
+        throw new UnsupportedOptionsException("Unsupported dictionary size " + dictSize);
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.write(0x00);
+        writeVarInt(index, records.size());
+        for (Record record : records) {
+            writeVarInt(index, record.unpaddedSize);
+            writeVarInt(index, record.uncompressedSize);
+        }
+        writePadding(index, index.size());
+
+        byte[] bytes = index.toByteArray();
+        out.write(bytes);
+        writeCrc32(out, bytes, 0, bytes.length);
+
+        // the backward size is the size of the index in multiples of four minus one
+        long backwardSize = (bytes.length + 4) / 4 - 1;
+        byte[] footer = {
+            (byte) backwardSize,
+            (byte) (backwardSize >>> 8),
+            (byte) (backwardSize >>> 16),
+            (byte) (backwardSize >>> 24),
+            STREAM_FLAGS[0],
+            STREAM_FLAGS[1]
+        };
+        writeCrc32(out, footer, 0, footer.length);
+        out.write(footer);
+        out.write(XZ.FOOTER_MAGIC);
+    }
+
+    private static void writeVarInt(OutputStream out, long value) throws IOException {
+        while (value >= 0x80) {
+            out.write((int) (value | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writePadding(OutputStream out, long size) throws IOException {
+        while ((size & 3) != 0) {
+            out.write(0x00);
+            size++;
+        }
+    }
+
+    private static void writeCrc32(OutputStream out, byte[] b, int off, int len) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(b, off, len);
+        out.write(crc.finish());
+    }
+}
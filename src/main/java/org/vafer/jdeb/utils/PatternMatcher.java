@@ -0,0 +1,264 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matcher for a set of Ant-style patterns (<code>**&#47;*.txt</code>,
+ * <code>usr/share/**</code>, etc), with the same semantics as
+ * <code>SelectorUtils.matchPath</code> (case sensitive).
+ *
+ * The patterns are compiled once into a tree of their path segments shared
+ * by all the patterns, the common prefixes are matched only once. A path is
+ * split only once and matched against all the patterns at the same time by
+ * following the branches of the tree matching its segments.
+ */
+public final class PatternMatcher {
+
+    /** The maximum number of matchers cached, the cache is cleared once full */
+    private static final int MAX_CACHED_MATCHERS = 1024;
+
+    /** The compiled matchers, the same patterns are usually used by several producers */
+    private static final Map<List<String>, PatternMatcher> CACHE = new ConcurrentHashMap<>();
+
+    private static final String DEEP_TREE_MATCH = "**";
+
+    /** A segment of a pattern with wildcards */
+    private static final class Glob {
+        private final char[] pattern;
+
+        private Glob( String pattern ) {
+            this.pattern = pattern.toCharArray();
+        }
+
+        private boolean matches( String segment ) {
+            return matches(0, segment, 0);
+        }
+
+        private boolean matches( int p, String s, int i ) {
+            while (p < pattern.length) {
+                char c = pattern[p];
+                if (c == '*') {
+                    // collapse the consecutive stars
+                    while (p + 1 < pattern.length && pattern[p + 1] == '*') {
+                        p++;
+                    }
+                    if (p + 1 == pattern.length) {
+                        return true;
+                    }
+                    for (int j = i; j <= s.length(); j++) {
+                        if (matches(p + 1, s, j)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (i == s.length() || (c != '?' && c != s.charAt(i))) {
+                    return false;
+                }
+                p++;
+                i++;
+            }
+            return i == s.length();
+        }
+    }
+
+    /** A node of the tree, the state reached after matching some segments */
+    private static final class Node {
+        /** The children for the literal segments */
+        private final Map<String, Node> literals = new HashMap<>();
+        /** The children for the segments with wildcards */
+        private final List<Glob> globs = new ArrayList<>();
+        private final List<Node> globNodes = new ArrayList<>();
+        /** The child for <code>**</code> */
+        private Node deep;
+        /** Whether this node matches any number of segments */
+        private final boolean isDeep;
+        /** Whether a pattern ends at this node */
+        private boolean terminal;
+
+        private Node( boolean isDeep ) {
+            this.isDeep = isDeep;
+        }
+
+        private Node child( String segment ) {
+            if (DEEP_TREE_MATCH.equals(segment)) {
+                if (deep == null) {
+                    deep = new Node(true);
+                }
+                return deep;
+            }
+            if (segment.indexOf('*') < 0 && segment.indexOf('?') < 0) {
+                return literals.computeIfAbsent(segment, s -> new Node(false));
+            }
+            for (int i = 0; i < globs.size(); i++) {
+                if (Arrays.equals(globs.get(i).pattern, segment.toCharArray())) {
+                    return globNodes.get(i);
+                }
+            }
+            Node node = new Node(false);
+            globs.add(new Glob(segment));
+            globNodes.add(node);
+            return node;
+        }
+
+        private boolean isLeaf() {
+            return literals.isEmpty() && globs.isEmpty() && deep == null;
+        }
+    }
+
+    private final Node root = new Node(false);
+
+    private PatternMatcher( String[] patterns ) {
+        for (String pattern : patterns) {
+            Node node = root;
+            for (String segment : tokenize(pattern)) {
+                node = node.child(segment);
+            }
+            node.terminal = true;
+        }
+    }
+
+    /**
+     * Returns the matcher for the specified patterns.
+     */
+    public static PatternMatcher compile( String... patterns ) {
+        final List<String> key = Arrays.asList(patterns.clone());
+        PatternMatcher matcher = CACHE.get(key);
+        if (matcher == null) {
+            matcher = new PatternMatcher(patterns);
+            if (CACHE.size() >= MAX_CACHED_MATCHERS) {
+                CACHE.clear();
+            }
+            CACHE.put(key, matcher);
+        }
+        return matcher;
+    }
+
+    /**
+     * Tells if the path matches one of the patterns.
+     */
+    public boolean matches( String path ) {
+        for (Node node : walk(path)) {
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells if a path below the specified directory may match one of the
+     * patterns. If not, the content of the directory doesn't have to be scanned.
+     */
+    public boolean mayMatchBelow( String directory ) {
+        for (Node node : walk(directory)) {
+            if (!node.isLeaf() || node.isDeep) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells if all the paths below the specified directory match one of the
+     * patterns, like with <code>dir/**</code>.
+     */
+    public boolean matchesAllBelow( String directory ) {
+        for (Node node : walk(directory)) {
+            if (node.isDeep && node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the nodes reached after matching the segments of the path.
+     * The two sets of nodes are swapped and reused between the segments.
+     */
+    private Set<Node> walk( String path ) {
+        Set<Node> nodes = new LinkedHashSet<>();
+        Set<Node> next = new LinkedHashSet<>();
+        addClosure(nodes, root);
+
+        for (String segment : tokenize(path)) {
+            if (nodes.isEmpty()) {
+                break;
+            }
+            next.clear();
+            for (Node node : nodes) {
+                if (node.isDeep) {
+                    addClosure(next, node);
+                }
+                Node literal = node.literals.get(segment);
+                if (literal != null) {
+                    addClosure(next, literal);
+                }
+                for (int i = 0; i < node.globs.size(); i++) {
+                    if (node.globs.get(i).matches(segment)) {
+                        addClosure(next, node.globNodes.get(i));
+                    }
+                }
+            }
+            final Set<Node> reached = next;
+            next = nodes;
+            nodes = reached;
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Adds the node and the <code>**</code> nodes following it, which also match no segment at all.
+     */
+    private static void addClosure( Set<Node> nodes, Node node ) {
+        while (node != null && nodes.add(node)) {
+            node = node.deep;
+        }
+    }
+
+    /**
+     * Splits the path into its segments. Like Ant, the leading separator of
+     * an absolute path is a segment of its own.
+     */
+    private static List<String> tokenize( String path ) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        if (path.startsWith("/") || path.startsWith(File.separator)) {
+            segments.add(File.separator);
+            start = 1;
+        }
+        for (int i = start; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/' || path.charAt(i) == File.separatorChar) {
+                if (i > start) {
+                    segments.add(path.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer replacing the new line delimiters with the Unix line feed while the
+ * text is written, with the same output as
+ * {@link Utils#toUnixLineEndings(java.io.InputStream, java.nio.charset.Charset)}
+ * for the text with carriage returns, and the text unchanged otherwise.
+ *
+ * Like the Ant FixCrLfFilter, a <code>\r\r\n</code> sequence is a single
+ * line ending, the Ctrl-Z ending the text is removed and a missing line
+ * ending is added to the last line. Since these changes at the end of the
+ * text only apply if it contains a carriage return, the trailing Ctrl-Z
+ * characters are held until the writer is closed.
+ */
+public final class UnixLineEndingsWriter extends FilterWriter {
+
+    private static final char CTRL_Z = 0x1A;
+
+    /** The number of carriage returns waiting for the next character */
+    private int pendingCr;
+    /** The number of Ctrl-Z characters held at the end of the text */
+    private int pendingCtrlZ;
+    private boolean hasCr;
+    private boolean lastWasEol;
+    private boolean closed;
+
+    public UnixLineEndingsWriter( Writer out ) {
+        super(out);
+    }
+
+    public void write( int c ) throws IOException {
+        if (c == CTRL_Z) {
+            if (pendingCtrlZ == 2) {
+                convert(CTRL_Z);
+            } else {
+                pendingCtrlZ++;
+            }
+            return;
+        }
+        flushCtrlZ();
+        convert((char) c);
+    }
+
+    public void write( char[] cbuf, int off, int len ) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(cbuf[i]);
+        }
+    }
+
+    public void write( String str, int off, int len ) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(str.charAt(i));
+        }
+    }
+
+    private void flushCtrlZ() throws IOException {
+        while (pendingCtrlZ > 0) {
+            pendingCtrlZ--;
+            convert(CTRL_Z);
+        }
+    }
+
+    private void convert( char c ) throws IOException {
+        if (pendingCr == 1) {
+            if (c == '\r') {
+                // may be \r\r\n
+                pendingCr = 2;
+                return;
+            }
+            pendingCr = 0;
+            eol();
+            if (c == '\n') {
+                return;
+            }
+        } else if (pendingCr == 2) {
+            pendingCr = 0;
+            eol();
+            if (c == '\n') {
+                return;
+            }
+            eol();
+        }
+
+        if (c == '\r') {
+            hasCr = true;
+            pendingCr = 1;
+            return;
+        }
+
+        out.write(c);
+        lastWasEol = c == '\n';
+    }
+
+    private void eol() throws IOException {
+        out.write('\n');
+        lastWasEol = true;
+    }
+
+    /**
+     * Writes the end of the text, the Ctrl-Z characters and line endings held.
+     */
+    private void finish() throws IOException {
+        if (!hasCr) {
+            for (; pendingCtrlZ > 0; pendingCtrlZ--) {
+                out.write(CTRL_Z);
+            }
+            return;
+        }
+
+        if (pendingCtrlZ > 0) {
+            // the Ctrl-Z ending the text is removed
+            pendingCtrlZ--;
+        }
+        for (int i = 0; i < pendingCr; i++) {
+            eol();
+        }
+        pendingCr = 0;
+        if (!lastWasEol) {
+            eol();
+        }
+        if (pendingCtrlZ > 0) {
+            // a remaining Ctrl-Z ends the text after the last line
+            out.write(CTRL_Z);
+            pendingCtrlZ = 0;
+        }
+    }
+
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            finish();
+        }
+        super.close();
+    }
+}
@@ -47,7 +47,7 @@ public final class Utils {
     private static final Pattern SNAPSHOT_PATTERN = Pattern.compile("(.*)[\\-+]SNAPSHOT");
 
     public static int copy( final InputStream pInput, final OutputStream pOutput ) throws IOException {
-        final byte[] buffer = new byte[2048];
+        final byte[] buffer = new byte[8192];
         int count = 0;
         int n;
         while (-1 != (n = pInput.read(buffer))) {
@@ -126,89 +126,7 @@ public final class Utils {
      * @param pExpression
      */
     public static String replaceVariables( final VariableResolver pResolver, final String pExpression, final String pOpen, final String pClose ) {
-        final char[] open = pOpen.toCharArray();
-        final char[] close = pClose.toCharArray();
-
-        final StringBuilder out = new StringBuilder();
-        StringBuilder sb = new StringBuilder();
-        char[] last = null;
-        int wo = 0;
-        int wc = 0;
-        int level = 0;
-        for (char c : pExpression.toCharArray()) {
-            if (c == open[wo]) {
-                if (wc > 0) {
-                    sb.append(close, 0, wc);
-                }
-                wc = 0;
-                wo++;
-                if (open.length == wo) {
-                    // found open
-                    if (last == open) {
-                        out.append(open);
-                    }
-                    level++;
-                    out.append(sb);
-                    sb = new StringBuilder();
-                    wo = 0;
-                    last = open;
-                }
-            } else if (c == close[wc]) {
-                if (wo > 0) {
-                    sb.append(open, 0, wo);
-                }
-                wo = 0;
-                wc++;
-                if (close.length == wc) {
-                    // found close
-                    if (last == open) {
-                        final String variable = pResolver.get(sb.toString());
-                        if (variable != null) {
-                            out.append(variable);
-                        } else {
-                            out.append(open);
-                            out.append(sb);
-                            out.append(close);
-                        }
-                    } else {
-                        out.append(sb);
-                        out.append(close);
-                    }
-                    sb = new StringBuilder();
-                    level--;
-                    wc = 0;
-                    last = close;
-                }
-            } else {
-
-                if (wo > 0) {
-                    sb.append(open, 0, wo);
-                }
-
-                if (wc > 0) {
-                    sb.append(close, 0, wc);
-                }
-
-                sb.append(c);
-
-                wo = wc = 0;
-            }
-        }
-
-        if (wo > 0) {
-            sb.append(open, 0, wo);
-        }
-
-        if (wc > 0) {
-            sb.append(close, 0, wc);
-        }
-
-        if (level > 0) {
-            out.append(open);
-        }
-        out.append(sb);
-
-        return out.toString();
+        return VariableTemplate.compile(pExpression, pOpen, pClose).render(pResolver);
     }
 
     @Deprecated
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Expression with variables delimited by an open and a close token
+ * (<code>[[name]]</code> by default), parsed once into its literal text
+ * and its variables and rendered with the values of a resolver.
+ *
+ * The expressions are parsed like {@link Utils#replaceVariables} always did:
+ * the variables can be nested in text between tokens, the variables not
+ * defined by the resolver and the unbalanced tokens are kept as is.
+ */
+public final class VariableTemplate {
+
+    /** The maximum number of templates cached, the cache is cleared once full */
+    private static final int MAX_CACHED_TEMPLATES = 1024;
+
+    /** The maximum length of the expressions cached */
+    private static final int MAX_CACHED_LENGTH = 4096;
+
+    /** The templates compiled, by tokens and expression */
+    private static final Map<List<String>, VariableTemplate> CACHE = new ConcurrentHashMap<>();
+
+    private static final int NONE = 0;
+    private static final int OPEN = 1;
+    private static final int CLOSE = 2;
+
+    /** Receives the text and the variables of an expression, in order */
+    private interface Handler {
+        void text( char[] chars, int off, int len ) throws IOException;
+
+        void text( StringBuilder text ) throws IOException;
+
+        void variable( String name ) throws IOException;
+    }
+
+    /**
+     * Parser of expressions, fed one character at a time.
+     */
+    private static final class Parser {
+
+        private final char[] open;
+        private final char[] close;
+        private final Handler handler;
+
+        /** The text since the last token */
+        private final StringBuilder text = new StringBuilder();
+        private int last = NONE;
+        private int wo;
+        private int wc;
+        private int level;
+
+        private Parser( String open, String close, Handler handler ) {
+            this.open = open.toCharArray();
+            this.close = close.toCharArray();
+            this.handler = handler;
+        }
+
+        private void accept( char c ) throws IOException {
+            if (c == open[wo]) {
+                if (wc > 0) {
+                    text.append(close, 0, wc);
+                }
+                wc = 0;
+                wo++;
+                if (open.length == wo) {
+                    // found open
+                    if (last == OPEN) {
+                        handler.text(open, 0, open.length);
+                    }
+                    level++;
+                    handler.text(text);
+                    text.setLength(0);
+                    wo = 0;
+                    last = OPEN;
+                }
+            } else if (c == close[wc]) {
+                if (wo > 0) {
+                    text.append(open, 0, wo);
+                }
+                wo = 0;
+                wc++;
+                if (close.length == wc) {
+                    // found close
+                    if (last == OPEN) {
+                        handler.variable(text.toString());
+                    } else {
+                        handler.text(text);
+                        handler.text(close, 0, close.length);
+                    }
+                    text.setLength(0);
+                    level--;
+                    wc = 0;
+                    last = CLOSE;
+                }
+            } else {
+                if (wo > 0) {
+                    text.append(open, 0, wo);
+                }
+                if (wc > 0) {
+                    text.append(close, 0, wc);
+                }
+                text.append(c);
+                wo = wc = 0;
+            }
+        }
+
+        /**
+         * Ends the expression, the parser is ready for the next one.
+         */
+        private void end() throws IOException {
+            if (wo > 0) {
+                text.append(open, 0, wo);
+            }
+            if (wc > 0) {
+                text.append(close, 0, wc);
+            }
+            if (level > 0) {
+                handler.text(open, 0, open.length);
+            }
+            handler.text(text);
+
+            text.setLength(0);
+            last = NONE;
+            wo = wc = level = 0;
+        }
+    }
+
+    private final String open;
+    private final String close;
+    /** The literal text before each variable, and after the last one */
+    private final String[] literals;
+    private final String[] variables;
+
+    private VariableTemplate( String open, String close, String[] literals, String[] variables ) {
+        this.open = open;
+        this.close = close;
+        this.literals = literals;
+        this.variables = variables;
+    }
+
+    /**
+     * Returns the template of the expression. The templates of the short
+     * expressions are cached.
+     *
+     * @param expression the expression
+     * @param open       the token opening a variable
+     * @param close      the token closing a variable
+     */
+    public static VariableTemplate compile( String expression, String open, String close ) {
+        if (expression.length() > MAX_CACHED_LENGTH) {
+            return parse(expression, open, close);
+        }
+
+        final List<String> key = Arrays.asList(open, close, expression);
+        VariableTemplate template = CACHE.get(key);
+        if (template == null) {
+            template = parse(expression, open, close);
+            if (CACHE.size() >= MAX_CACHED_TEMPLATES) {
+                CACHE.clear();
+            }
+            CACHE.put(key, template);
+        }
+        return template;
+    }
+
+    private static VariableTemplate parse( String expression, String open, String close ) {
+        final List<String> literals = new ArrayList<>();
+        final List<String> variables = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+
+        final Parser parser = new Parser(open, close, new Handler() {
+            public void text( char[] chars, int off, int len ) {
+                literal.append(chars, off, len);
+            }
+
+            public void text( StringBuilder text ) {
+                literal.append(text);
+            }
+
+            public void variable( String name ) {
+                literals.add(literal.toString());
+                variables.add(name);
+                literal.setLength(0);
+            }
+        });
+
+        try {
+            for (int i = 0; i < expression.length(); i++) {
+                parser.accept(expression.charAt(i));
+            }
+            parser.end();
+        } catch (IOException e) {
+            // not thrown by the handler
+            throw new IllegalStateException(e);
+        }
+        literals.add(literal.toString());
+
+        return new VariableTemplate(open, close, literals.toArray(new String[0]), variables.toArray(new String[0]));
+    }
+
+    /**
+     * Returns the expression with the variables replaced by their value.
+     */
+    public String render( VariableResolver resolver ) {
+        if (variables.length == 0) {
+            return literals[0];
+        }
+
+        final StringBuilder out = new StringBuilder();
+        for (int i = 0; i < variables.length; i++) {
+            out.append(literals[i]);
+            final String value = resolver.get(variables[i]);
+            if (value != null) {
+                out.append(value);
+            } else {
+                out.append(open).append(variables[i]).append(close);
+            }
+        }
+        out.append(literals[variables.length]);
+        return out.toString();
+    }
+
+    /**
+     * Copies the lines of the reader to the writer with the variables
+     * replaced, each line being an expression. The lines end with a line
+     * feed, whatever their original line ending. The text is filtered while
+     * it's read, without keeping the lines in memory.
+     *
+     * @param in       the text filtered
+     * @param out      the writer receiving the text
+     * @param resolver the resolver of the variables, null to keep the lines as is
+     */
+    public static void filter( Reader in, Writer out, VariableResolver resolver, String open, String close ) throws IOException {
+        filter(in, out, resolver, open, close, true);
+    }
+
+    /**
+     * Copies the text of the reader to the writer with the variables
+     * replaced, each line being an expression. Unlike
+     * {@link #filter(Reader, Writer, VariableResolver, String, String)}
+     * the line endings are kept as is.
+     *
+     * @param in       the text filtered
+     * @param out      the writer receiving the text
+     * @param resolver the resolver of the variables
+     */
+    public static void replaceVariables( Reader in, Writer out, VariableResolver resolver, String open, String close ) throws IOException {
+        filter(in, out, resolver, open, close, false);
+    }
+
+    private static void filter( Reader in, final Writer out, final VariableResolver resolver, final String open, final String close, boolean unixLineEndings ) throws IOException {
+        final Parser parser = resolver == null ? null : new Parser(open, close, new Handler() {
+            private final char[] chunk = new char[1024];
+
+            public void text( char[] chars, int off, int len ) throws IOException {
+                out.write(chars, off, len);
+            }
+
+            public void text( StringBuilder text ) throws IOException {
+                for (int start = 0; start < text.length(); start += chunk.length) {
+                    final int end = Math.min(start + chunk.length, text.length());
+                    text.getChars(start, end, chunk, 0);
+                    out.write(chunk, 0, end - start);
+                }
+            }
+
+            public void variable( String name ) throws IOException {
+                final String value = resolver.get(name);
+                if (value != null) {
+                    out.write(value);
+                } else {
+                    out.write(open);
+                    out.write(name);
+                    out.write(close);
+                }
+            }
+        });
+
+        // the lines are split like BufferedReader.readLine() does
+        final char[] buffer = new char[8192];
+        boolean inLine = false;
+        boolean skipLf = false;
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            for (int i = 0; i < length; i++) {
+                final char c = buffer[i];
+                if (c == '\n' && skipLf) {
+                    skipLf = false;
+                    if (!unixLineEndings) {
+                        out.write(c);
+                    }
+                    continue;
+                }
+                skipLf = false;
+                if (c == '\r' || c == '\n') {
+                    endLine(parser);
+                    out.write(unixLineEndings ? '\n' : c);
+                    inLine = false;
+                    skipLf = c == '\r';
+                } else {
+                    if (parser != null) {
+                        parser.accept(c);
+                    } else {
+                        out.write(c);
+                    }
+                    inLine = true;
+                }
+            }
+        }
+        if (inLine) {
+            endLine(parser);
+            if (unixLineEndings) {
+                out.write('\n');
+            }
+        }
+    }
+
+    private static void endLine( Parser parser ) throws IOException {
+        if (parser != null) {
+            parser.end();
+        }
+    }
+}
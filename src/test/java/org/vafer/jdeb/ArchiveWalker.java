@@ -32,6 +32,7 @@ import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
 
 /**
  * Support class for inspecting the content of an archive.
@@ -63,7 +64,11 @@ public class ArchiveWalker {
     }
 
     public static boolean walkControl(File deb, final ArchiveVisitor<TarArchiveEntry> visitor) throws IOException {
-        return walkEmbedded(deb, "control.tar", visitor, Compression.GZIP);
+        return walkControl(deb, visitor, Compression.GZIP);
+    }
+
+    public static boolean walkControl(File deb, final ArchiveVisitor<TarArchiveEntry> visitor, final Compression compression) throws IOException {
+        return walkEmbedded(deb, "control.tar", visitor, compression);
     }
 
     public static boolean walkData(File deb, final ArchiveVisitor<TarArchiveEntry> visitor, final Compression compression) throws IOException {
@@ -86,6 +91,8 @@ public class ArchiveWalker {
                     in = new XZCompressorInputStream(in);
                 } else if (compression == Compression.BZIP2) {
                     in = new BZip2CompressorInputStream(in);
+                } else if (compression == Compression.ZSTD) {
+                    in = new ZstdCompressorInputStream(in);
                 }
 
                 ArchiveWalker.walk(new TarArchiveInputStream(in), (ArchiveVisitor<TarArchiveEntry>) (entry1, content1) -> {
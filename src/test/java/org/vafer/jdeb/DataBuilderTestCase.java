@@ -16,16 +16,27 @@
 
 package org.vafer.jdeb;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.types.FileSet;
 import org.junit.Assert;
@@ -64,6 +75,135 @@ public final class DataBuilderTestCase extends Assert {
         assertTrue("two spaces between md5 and file, no leading slash, or dot, on file path", md5s.toString().equals("8bc944dbd052ef51652e70a5104492e3  test/testfile\n"));
     }
 
+    @Test
+    public void testDeduplication() throws Exception {
+        File archive = prepareArchive();
+
+        DataBuilder builder = new DataBuilder(new NullConsole(), null);
+
+        File pom = new File("pom.xml");
+        DataProducer producer = receiver -> {
+            receiver.onEachFile(new FileInputStream(pom), createEntry("/usr/share/app/lib/pom.xml", pom.length(), 0644));
+            receiver.onEachFile(new FileInputStream(pom), createEntry("/usr/share/tool/lib/pom.xml", pom.length(), 0644));
+            // different mode, written in full
+            receiver.onEachFile(new FileInputStream(pom), createEntry("/usr/share/tool/bin/pom.xml", pom.length(), 0755));
+            // same size, different content
+            byte[] content = new byte[(int) pom.length()];
+            receiver.onEachFile(new ByteArrayInputStream(content), createEntry("/usr/share/tool/lib/zeros", content.length, 0644));
+            // below the threshold
+            receiver.onEachFile(new ByteArrayInputStream(new byte[] { 1 }), createEntry("/usr/share/app/one", 1, 0644));
+            receiver.onEachFile(new ByteArrayInputStream(new byte[] { 1 }), createEntry("/usr/share/tool/one", 1, 0644));
+        };
+
+        StringBuilder md5s = new StringBuilder();
+        builder.buildData(Arrays.asList(producer), archive, md5s, new TarOptions().compression(Compression.NONE).deduplicationThreshold(64), false);
+
+        Map<String, TarArchiveEntry> entries = new LinkedHashMap<>();
+        try (TarArchiveInputStream in = new TarArchiveInputStream(new FileInputStream(archive))) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), entry);
+            }
+        }
+
+        TarArchiveEntry link = entries.get("./usr/share/tool/lib/pom.xml");
+        assertTrue("hard link expected", link.isLink());
+        assertEquals("./usr/share/app/lib/pom.xml", link.getLinkName());
+        assertEquals(0, link.getSize());
+        assertTrue(entries.get("./usr/share/tool/bin/pom.xml").isFile());
+        assertEquals(pom.length(), entries.get("./usr/share/tool/bin/pom.xml").getSize());
+        assertTrue(entries.get("./usr/share/tool/lib/zeros").isFile());
+        assertTrue(entries.get("./usr/share/tool/one").isFile());
+
+        String[] lines = md5s.toString().split("\n");
+        assertEquals(6, lines.length);
+        assertEquals(lines[0].substring(0, 32), lines[1].substring(0, 32));
+        assertTrue(lines[1].endsWith("  usr/share/tool/lib/pom.xml"));
+    }
+
+    @Test
+    public void testContentClassification() throws Exception {
+        File archive = prepareArchive();
+
+        DataBuilder builder = new DataBuilder(new NullConsole(), null);
+
+        byte[] script = "#!/bin/sh\r\necho \"hello\"\r\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] elf = { 0x7F, 'E', 'L', 'F', 2, 1, 1, 0, '\r', '\n' };
+        byte[] text = "# not a script\r\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] unix = "#!/bin/sh\necho \"h\u00e9llo\"\n".getBytes(StandardCharsets.UTF_8);
+        byte[] malformed = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '#', '!', '/', 'b', 'i', 'n', '/', 's', 'h', '\r', '\n', (byte) 0xC3, '\r', '\n' };
+        DataProducer producer = receiver -> {
+            receiver.onEachFile(new ByteArrayInputStream(script), createEntry("/usr/bin/script", script.length, 0644));
+            receiver.onEachFile(new ByteArrayInputStream(script), createEntry("/usr/bin/private", script.length, 0600));
+            receiver.onEachFile(new ByteArrayInputStream(elf), createEntry("/usr/bin/binary", elf.length, 0644));
+            receiver.onEachFile(new ByteArrayInputStream(text), createEntry("/usr/share/doc/text", text.length, 0644));
+            receiver.onEachFile(new ByteArrayInputStream(unix), createEntry("/usr/bin/unix", unix.length, 0644));
+            receiver.onEachFile(new ByteArrayInputStream(malformed), createEntry("/usr/bin/malformed", malformed.length, 0644));
+        };
+
+        builder.buildData(Arrays.asList(producer), archive, new StringBuilder(), new TarOptions().compression(Compression.NONE).detectExecutables(true).fixScriptLineEndings(true), false);
+
+        Map<String, Integer> modes = new HashMap<>();
+        Map<String, String> contents = new HashMap<>();
+        try (TarArchiveInputStream in = new TarArchiveInputStream(new FileInputStream(archive))) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                modes.put(entry.getName(), entry.getMode() & 07777);
+                contents.put(entry.getName(), new String(IOUtils.toByteArray(in), StandardCharsets.ISO_8859_1));
+            }
+        }
+
+        assertEquals(Integer.valueOf(0755), modes.get("./usr/bin/script"));
+        assertEquals(Integer.valueOf(0700), modes.get("./usr/bin/private"));
+        assertEquals(Integer.valueOf(0755), modes.get("./usr/bin/binary"));
+        assertEquals(Integer.valueOf(0644), modes.get("./usr/share/doc/text"));
+
+        assertEquals("#!/bin/sh\necho \"hello\"\n", contents.get("./usr/bin/script"));
+        assertEquals(new String(elf, StandardCharsets.ISO_8859_1), contents.get("./usr/bin/binary"));
+        assertEquals("# not a script\r\n", contents.get("./usr/share/doc/text"));
+        assertEquals(new String(unix, StandardCharsets.ISO_8859_1), contents.get("./usr/bin/unix"));
+        assertEquals("malformed UTF-8 kept as is", new String(malformed, StandardCharsets.ISO_8859_1), contents.get("./usr/bin/malformed"));
+    }
+
+    @Test
+    public void testHardLinks() throws Exception {
+        File dir = Files.createTempDirectory("jdeb").toFile();
+        Files.copy(Paths.get("pom.xml"), new File(dir, "link.xml").toPath());
+        Files.createLink(new File(dir, "pom.xml").toPath(), new File(dir, "link.xml").toPath());
+        File archive = prepareArchive();
+
+        DataBuilder builder = new DataBuilder(new NullConsole(), null);
+        StringBuilder md5s = new StringBuilder();
+        builder.buildData(Arrays.asList(new DataProducerDirectory(dir, null, null, null, true)), archive, md5s, new TarOptions().compression(Compression.NONE), false);
+
+        Map<String, TarArchiveEntry> entries = new LinkedHashMap<>();
+        try (TarArchiveInputStream in = new TarArchiveInputStream(new FileInputStream(archive))) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), entry);
+            }
+        }
+
+        TarArchiveEntry link = entries.get("./pom.xml");
+        assertTrue("hard link expected", link.isLink());
+        assertEquals("./link.xml", link.getLinkName());
+        assertTrue(entries.get("./link.xml").isFile());
+
+        String[] lines = md5s.toString().split("\\n");
+        assertEquals(2, lines.length);
+        assertEquals(lines[0].substring(0, 32), lines[1].substring(0, 32));
+        assertTrue(lines[1].endsWith("  pom.xml"));
+
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private static TarArchiveEntry createEntry(String name, long size, int mode) {
+        TarArchiveEntry entry = new TarArchiveEntry(name, true);
+        entry.setSize(size);
+        entry.setMode(mode);
+        return entry;
+    }
+
     @Test
     public void testCreateParentDirectories() throws Exception {
         File archive = prepareArchive();
@@ -84,6 +224,45 @@ public final class DataBuilderTestCase extends Assert {
         assertEquals("entries", 4, count);
     }
 
+    @Test
+    public void testExplicitDirectoryUpgradesParent() throws Exception {
+        File archive = prepareArchive();
+
+        DataBuilder builder = new DataBuilder(new NullConsole(), null);
+
+        DataProducer producer = receiver -> {
+            TarArchiveEntry conf = new TarArchiveEntry("/opt/app/conf", true);
+            conf.setMode(0700);
+            receiver.onEachDir(conf);
+
+            // declared after being created as the parent of conf
+            TarArchiveEntry app = new TarArchiveEntry("/opt/app", true);
+            app.setMode(0750);
+            app.setUserName("app");
+            app.setGroupName("app");
+            receiver.onEachDir(app);
+
+            TarArchiveEntry file = new TarArchiveEntry("/opt/app/conf/app.properties");
+            receiver.onEachFile(new ByteArrayInputStream(new byte[0]), file);
+        };
+
+        builder.buildData(Arrays.asList(producer), archive, new StringBuilder(), new TarOptions().compression(Compression.NONE), false);
+
+        Map<String, TarArchiveEntry> entries = new LinkedHashMap<>();
+        try (TarArchiveInputStream in = new TarArchiveInputStream(new FileInputStream(archive))) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                assertNull("duplicate entry " + entry.getName(), entries.put(entry.getName(), entry));
+            }
+        }
+
+        assertEquals(Arrays.asList("./opt/", "./opt/app/", "./opt/app/conf/", "./opt/app/conf/app.properties"), new ArrayList<>(entries.keySet()));
+        assertEquals("mode of the upgraded directory", 0750, entries.get("./opt/app/").getMode() & 07777);
+        assertEquals("owner of the upgraded directory", "app", entries.get("./opt/app/").getUserName());
+        assertEquals("mode of the parent directory", 0755, entries.get("./opt/").getMode() & 07777);
+        assertEquals("mode of the explicit directory", 0700, entries.get("./opt/app/conf/").getMode() & 07777);
+    }
+
     @Test
     public void testModifiedTimeIsSet() throws Exception {
         File dir = prepareSubdir();
@@ -118,6 +297,34 @@ public final class DataBuilderTestCase extends Assert {
         builder.buildData(Arrays.asList(dirProducer), archive, new StringBuilder(), new TarOptions().compression(Compression.NONE), true);
     }
 
+    @Test
+    public void testZstdSegments() throws Exception {
+        File segmentData = File.createTempFile("jdeb", "segment");
+        File archive = prepareArchive();
+        TarOptions options = new TarOptions().compression(Compression.ZSTD);
+
+        DataBuilder builder = new DataBuilder(new NullConsole(), null);
+        DataBuilder.Segment segment = builder.buildSegment(Arrays.asList(new DataProducerFile(new File("pom.xml"), "/usr/share/app/pom.xml", null, null, null)), segmentData, options, false);
+        builder.buildData(Arrays.asList(new DataProducerFile(new File("pom.xml"), "/usr/lib/app/pom.xml", null, null, null)), segment, archive, new StringBuilder(), options, false);
+
+        // two frames, the second one starting right after the segment
+        byte[] magic = { 0x28, (byte) 0xB5, 0x2F, (byte) 0xFD };
+        byte[] content = Files.readAllBytes(archive.toPath());
+        assertArrayEquals(magic, Arrays.copyOfRange(content, 0, 4));
+        assertArrayEquals(magic, Arrays.copyOfRange(content, (int) segmentData.length(), (int) segmentData.length() + 4));
+
+        List<String> names = new ArrayList<>();
+        try (TarArchiveInputStream in = new TarArchiveInputStream(new ZstdCompressorInputStream(new FileInputStream(archive)))) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+
+        assertEquals(Arrays.asList("./usr/", "./usr/share/", "./usr/share/app/", "./usr/share/app/pom.xml", "./usr/lib/", "./usr/lib/app/", "./usr/lib/app/pom.xml"), names);
+        assertTrue("Cannot delete the file " + segmentData, segmentData.delete());
+    }
+
     private File prepareArchive() {
         File archive = new File("target/data.tar");
         if (archive.exists()) {
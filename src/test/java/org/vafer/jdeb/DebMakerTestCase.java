@@ -21,6 +21,8 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -30,6 +32,8 @@ import java.util.Set;
 
 import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.reflect.FieldUtils;
@@ -41,6 +45,7 @@ import org.vafer.jdeb.maven.Data;
 import org.vafer.jdeb.maven.Mapper;
 import org.vafer.jdeb.producers.DataProducerArchive;
 import org.vafer.jdeb.producers.DataProducerDirectory;
+import org.vafer.jdeb.producers.DataProducerFile;
 import org.vafer.jdeb.producers.DataProducerLink;
 import org.vafer.jdeb.utils.InformationInputStream;
 import org.vafer.jdeb.utils.MapVariableResolver;
@@ -235,6 +240,39 @@ public final class DebMakerTestCase extends Assert {
         });
     }
 
+    @Test
+    public void testConffilesCollectedWithData() throws Exception {
+        File deb = File.createTempFile("jdeb", ".deb");
+
+        final DataProducer archive = new DataProducerArchive(new File(getClass().getResource("deb/data.tgz").toURI()), null, null, null);
+        final int[] passes = new int[1];
+        DataProducer data = receiver -> {
+            passes[0]++;
+            archive.produce(receiver);
+        };
+
+        // only the name of the conffiles outside of the package is needed, the file isn't opened
+        DataProducer missing = new DataProducerFile(new File("target/no-such-file"), "/etc/missing.conf", null, null, null);
+
+        DebMaker maker = new DebMaker(new NullConsole(), Arrays.asList(data), Arrays.asList(data, missing));
+        maker.setControl(new File(getClass().getResource("deb/control").toURI()));
+        maker.setDeb(deb);
+        maker.createDeb(Compression.GZIP);
+
+        assertEquals("number of passes over the data", 1, passes[0]);
+
+        final Set<String> conffiles = new HashSet<>();
+        ArchiveWalker.walkControl(deb, (entry, content) -> {
+            if (entry.getName().equals("./conffiles")) {
+                conffiles.addAll(IOUtils.readLines(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+            }
+        });
+
+        assertEquals(new HashSet<>(Arrays.asList("/test/testfile2", "/etc/missing.conf")), conffiles);
+
+        assertTrue("Cannot delete the file " + deb, deb.delete());
+    }
+
     @Test
     public void testCreationCustomToken() throws Exception {
         DataProducer[] data = prepareData();
@@ -527,6 +565,245 @@ public final class DebMakerTestCase extends Assert {
         maker.setChangesEnabled(false);
         maker.setCompression(null);
         assertThrows(PackagingException.class, maker::validate);
+
+        maker.setCompression("zstd");
+        maker.setControlCompression("bzip2");
+        assertThrows(PackagingException.class, maker::validate);
+
+        maker.setControlCompression("gzip");
+        maker.setCompressionLevel(19);
+        maker.validate();
+
+        maker.setCompression("gzip");
+        assertThrows(PackagingException.class, maker::validate);
+
+        maker.setCompression("bzip2");
+        maker.setCompressionLevel(0);
+        assertThrows(PackagingException.class, maker::validate);
+
+        maker.setCompression("xz");
+        maker.validate();
+
+        maker.setCompression("gzip");
+        maker.validate();
+
+        maker.setXzBlockSize(-1);
+        assertThrows(PackagingException.class, maker::validate);
+    }
+
+    @Test
+    public void testChangesChecksums() throws Exception {
+        File deb = File.createTempFile("jdeb", ".deb");
+        File changes = File.createTempFile("jdeb", ".changes");
+
+        DebMaker maker = new DebMaker(new NullConsole(), Arrays.asList(prepareData()), null);
+        maker.setEncoding(StandardCharsets.UTF_8);
+        maker.setControl(new File(getClass().getResource("deb/control").toURI()));
+        maker.setDeb(deb);
+        maker.setChangesEnabled(true);
+        maker.setChangesIn(new File(getClass().getResource("changes/changes.txt").toURI()));
+        maker.setChangesOut(changes);
+        maker.makeDeb();
+
+        String content = FileUtils.readFileToString(changes, UTF_8);
+        byte[] packageContent = FileUtils.readFileToByteArray(deb);
+        assertTrue("MD5", content.contains(" " + DigestUtils.md5Hex(packageContent) + " " + packageContent.length + " "));
+        assertTrue("SHA1", content.contains(" " + DigestUtils.sha1Hex(packageContent) + " " + packageContent.length + " " + deb.getName()));
+        assertTrue("SHA256", content.contains(" " + DigestUtils.sha256Hex(packageContent) + " " + packageContent.length + " " + deb.getName()));
+
+        assertTrue("Cannot delete the file " + deb, deb.delete());
+        assertTrue("Cannot delete the file " + changes, changes.delete());
+    }
+
+    @Test
+    public void testZstdCompression() throws Exception {
+        DataProducer[] data = prepareData();
+        File deb = File.createTempFile("jdeb", ".deb");
+
+        DebMaker maker = new DebMaker(new NullConsole(), Arrays.asList(data), null);
+        maker.setEncoding(StandardCharsets.UTF_8);
+        maker.setControl(new File(getClass().getResource("deb/control").toURI()));
+        maker.setDeb(deb);
+        maker.setControlCompression("zstd");
+        maker.setCompressionLevel(19);
+        maker.setCompressionThreads(2);
+
+        BinaryPackageControlFile packageControlFile = maker.createDeb(Compression.ZSTD);
+
+        assertTrue(packageControlFile.isValid());
+        assertTrue("control.tar.zst wasn't found in the package", ArchiveWalker.arArchiveContains(deb, "control.tar.zst"));
+        assertTrue("data.tar.zst wasn't found in the package", ArchiveWalker.arArchiveContains(deb, "data.tar.zst"));
+
+        final Set<String> filesInDeb = new HashSet<>();
+        assertTrue("control", ArchiveWalker.walkControl(deb, (entry, content) -> filesInDeb.add(entry.getName()), Compression.ZSTD));
+        assertTrue("data", ArchiveWalker.walkData(deb, (entry, content) -> filesInDeb.add(entry.getName()), Compression.ZSTD));
+
+        assertTrue("control file wasn't found in the package", filesInDeb.contains("./control"));
+        assertTrue("testfile wasn't found in the package", filesInDeb.contains("./test/testfile"));
+
+        assertTrue("Cannot delete the file " + deb, deb.delete());
+    }
+
+    @Test
+    public void testSplitPackages() throws Exception {
+        DataProducer[] data = prepareData();
+        File deb = File.createTempFile("jdeb", ".deb");
+        File splitDeb = File.createTempFile("jdeb-split", ".deb");
+
+        Data conffile = new Data();
+        conffile.setType("file");
+        conffile.setSrc(new File(getClass().getResource("deb/data.tgz").toURI()));
+        conffile.setDst("/test/configuration");
+        conffile.setConffile(true);
+
+        Collection<DataProducer> producers = new ArrayList<>(Arrays.asList(data));
+        producers.add(conffile);
+
+        DebMaker maker = new DebMaker(new NullConsole(), producers, Arrays.<DataProducer>asList(conffile));
+        maker.setEncoding(StandardCharsets.UTF_8);
+        maker.setControl(new File(getClass().getResource("deb/control").toURI()));
+        maker.setDeb(deb);
+        maker.addSplitPackage(new SplitPackage(splitDeb, new File(getClass().getResource("deb/controlwithoutdepends").toURI()), new String[] { "test/testfile4", "test/conf*" }));
+        maker.validate();
+
+        BinaryPackageControlFile packageControlFile = maker.createDeb(Compression.GZIP);
+
+        assertEquals("test", packageControlFile.get("Package"));
+
+        final Set<String> files = new HashSet<>();
+        ArchiveWalker.walkData(deb, (entry, content) -> files.add(entry.getName()), Compression.GZIP);
+        final Set<String> splitFiles = new HashSet<>();
+        ArchiveWalker.walkData(splitDeb, (entry, content) -> splitFiles.add(entry.getName()), Compression.GZIP);
+
+        assertTrue("testfile wasn't found in the main package", files.contains("./test/testfile"));
+        assertFalse("testfile4 was found in the main package", files.contains("./test/testfile4"));
+        assertTrue("/link/path-element.ext wasn't found in the main package", files.contains("./link/path-element.ext"));
+        assertEquals(new HashSet<>(Arrays.asList("./test/", "./test/testfile4", "./test/configuration")), splitFiles);
+
+        final Map<String, String> control = new HashMap<>();
+        ArchiveWalker.walkControl(splitDeb, (entry, content) -> control.put(entry.getName(), new String(content, UTF_8)));
+
+        assertEquals("/test/configuration\n", control.get("./conffiles"));
+        assertTrue(control.get("./md5sums").contains("  test/testfile4\n"));
+        assertFalse(control.get("./md5sums").contains("  test/testfile\n"));
+        BinaryPackageControlFile splitControlFile = new BinaryPackageControlFile(control.get("./control"));
+        assertEquals("controlwithoutdepends", splitControlFile.get("Package"));
+        assertNotNull(splitControlFile.get("Installed-Size"));
+
+        assertTrue("Cannot delete the file " + deb, deb.delete());
+        assertTrue("Cannot delete the file " + splitDeb, splitDeb.delete());
+    }
+
+    @Test
+    public void testSplitPackagesWithHardLinks() throws Exception {
+        File dir = Files.createTempDirectory("jdeb").toFile();
+        File file = new File(dir, "usr/share/app/file.txt");
+        FileUtils.writeStringToFile(file, "content", UTF_8);
+        Files.createDirectories(new File(dir, "usr/share/doc").toPath());
+        Files.createLink(new File(dir, "usr/share/doc/link.txt").toPath(), file.toPath());
+        Files.createLink(new File(dir, "usr/share/app/link.txt").toPath(), file.toPath());
+        File deb = File.createTempFile("jdeb", ".deb");
+        File splitDeb = File.createTempFile("jdeb-split", ".deb");
+
+        DebMaker maker = new DebMaker(new NullConsole(), Arrays.<DataProducer>asList(new DataProducerDirectory(dir, null, null, null, true)), null);
+        maker.setEncoding(StandardCharsets.UTF_8);
+        maker.setControl(new File(getClass().getResource("deb/control").toURI()));
+        maker.setDeb(deb);
+        maker.addSplitPackage(new SplitPackage(splitDeb, new File(getClass().getResource("deb/controlwithoutdepends").toURI()), new String[] { "usr/share/doc/**" }));
+        maker.setReadAheadThreads(2);
+        maker.validate();
+        maker.createDeb(Compression.GZIP);
+
+        final Map<String, TarArchiveEntry> entries = new HashMap<>();
+        ArchiveWalker.walkData(deb, (entry, content) -> entries.put(entry.getName(), entry), Compression.GZIP);
+        final Map<String, String> splitFiles = new HashMap<>();
+        ArchiveWalker.walkData(splitDeb, (entry, content) -> splitFiles.put(entry.getName(), entry.isFile() ? new String(content, UTF_8) : null), Compression.GZIP);
+
+        assertTrue("hard link expected in the main package", entries.get("./usr/share/app/link.txt").isLink());
+        assertEquals("copy expected in the split package", "content", splitFiles.get("./usr/share/doc/link.txt"));
+
+        FileUtils.deleteDirectory(dir);
+        assertTrue("Cannot delete the file " + deb, deb.delete());
+        assertTrue("Cannot delete the file " + splitDeb, splitDeb.delete());
+    }
+
+    @Test
+    public void testHardLinkedConffiles() throws Exception {
+        File dir = Files.createTempDirectory("jdeb").toFile();
+        File file = new File(dir, "etc/app/first.conf");
+        FileUtils.writeStringToFile(file, "key=value", UTF_8);
+        Files.createLink(new File(dir, "etc/app/second.conf").toPath(), file.toPath());
+        File deb = File.createTempFile("jdeb", ".deb");
+
+        Data conffiles = new Data();
+        conffiles.setType("directory");
+        conffiles.setSrc(dir);
+        conffiles.setConffile(true);
+        conffiles.setHardLinks(true);
+
+        DebMaker maker = new DebMaker(new NullConsole(), Arrays.<DataProducer>asList(conffiles), Arrays.<DataProducer>asList(conffiles));
+        maker.setEncoding(StandardCharsets.UTF_8);
+        maker.setControl(new File(getClass().getResource("deb/control").toURI()));
+        maker.setDeb(deb);
+        maker.validate();
+        maker.createDeb(Compression.GZIP);
+
+        final Map<String, TarArchiveEntry> entries = new HashMap<>();
+        ArchiveWalker.walkData(deb, (entry, content) -> entries.put(entry.getName(), entry), Compression.GZIP);
+        final Map<String, String> control = new HashMap<>();
+        ArchiveWalker.walkControl(deb, (entry, content) -> control.put(entry.getName(), new String(content, UTF_8)));
+
+        assertTrue("hard link expected", entries.get("./etc/app/second.conf").isLink());
+        assertEquals("/etc/app/first.conf\n/etc/app/second.conf\n", control.get("./conffiles"));
+
+        FileUtils.deleteDirectory(dir);
+        assertTrue("Cannot delete the file " + deb, deb.delete());
+    }
+
+    @Test
+    public void testArchitecturePackages() throws Exception {
+        for (Compression compression : Arrays.asList(Compression.GZIP, Compression.NONE, Compression.ZSTD)) {
+            File amd64 = File.createTempFile("jdeb-amd64", ".deb");
+            File arm64 = File.createTempFile("jdeb-arm64", ".deb");
+            File library = new File(getClass().getResource("deb/data.tgz").toURI());
+
+            DebMaker maker = new DebMaker(new NullConsole(), Arrays.asList(prepareData()), null);
+            maker.setEncoding(StandardCharsets.UTF_8);
+            maker.setControl(new File(getClass().getResource("deb/control").toURI()));
+            maker.addArchitecturePackage(new ArchitecturePackage("amd64", amd64, Arrays.<DataProducer>asList(
+                new DataProducerFile(library, "/usr/lib/x86_64-linux-gnu/libnative.so", null, null, null))));
+            maker.addArchitecturePackage(new ArchitecturePackage("arm64", arm64, Arrays.<DataProducer>asList(
+                new DataProducerFile(library, "/usr/lib/aarch64-linux-gnu/libnative.so", null, null, null))));
+            maker.validate();
+
+            BinaryPackageControlFile packageControlFile = maker.createDeb(compression);
+            assertEquals("amd64", packageControlFile.get("Architecture"));
+
+            for (File deb : Arrays.asList(amd64, arm64)) {
+                final Set<String> files = new HashSet<>();
+                ArchiveWalker.walkData(deb, (entry, content) -> files.add(entry.getName()), compression);
+
+                final Map<String, String> control = new HashMap<>();
+                ArchiveWalker.walkControl(deb, (entry, content) -> control.put(entry.getName(), new String(content, UTF_8)));
+
+                final String architecture = deb == amd64 ? "amd64" : "arm64";
+                final String library64 = deb == amd64 ? "x86_64-linux-gnu" : "aarch64-linux-gnu";
+                final String other64 = deb == amd64 ? "aarch64-linux-gnu" : "x86_64-linux-gnu";
+
+                assertTrue(compression + ": testfile wasn't found in the package", files.contains("./test/testfile"));
+                assertTrue(compression + ": testfile4 wasn't found in the package", files.contains("./test/testfile4"));
+                assertTrue(compression + ": the native library wasn't found in the package", files.contains("./usr/lib/" + library64 + "/libnative.so"));
+                assertFalse(compression + ": the native library of the other architecture was found in the package", files.contains("./usr/lib/" + other64 + "/libnative.so"));
+                assertTrue(files.contains("./usr/lib/"));
+
+                assertEquals(architecture, new BinaryPackageControlFile(control.get("./control")).get("Architecture"));
+                assertTrue(control.get("./md5sums").contains("  test/testfile\n"));
+                assertTrue(control.get("./md5sums").contains("  usr/lib/" + library64 + "/libnative.so\n"));
+            }
+
+            assertTrue("Cannot delete the file " + amd64, amd64.delete());
+            assertTrue("Cannot delete the file " + arm64, arm64.delete());
+        }
     }
 
     private DataProducer[] prepareData() throws URISyntaxException {
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vafer.jdeb.producers.DataProducerArchive;
+import org.vafer.jdeb.producers.DataProducerDirectory;
+import org.vafer.jdeb.producers.DataProducerFile;
+import org.vafer.jdeb.producers.DataProducerLink;
+
+public final class ReadAheadPipelineTestCase extends Assert {
+
+    /** Consumer recording the entries and a digest of their content */
+    private static final class RecordingConsumer implements DataConsumer {
+
+        private final List<String> entries = new ArrayList<>();
+
+        public void onEachDir(TarArchiveEntry dirEntry) {
+            entries.add("dir " + dirEntry.getName());
+        }
+
+        public void onEachFile(InputStream input, TarArchiveEntry fileEntry) throws IOException {
+            entries.add("file " + fileEntry.getName() + " " + DigestUtils.md5Hex(input));
+        }
+
+        public void onEachLink(TarArchiveEntry linkEntry) {
+            entries.add("link " + linkEntry.getName() + " -> " + linkEntry.getLinkName());
+        }
+    }
+
+    private List<DataProducer> createProducers() throws Exception {
+        File directory = new File(getClass().getResource("deb/data").toURI());
+        File archive = new File(getClass().getResource("deb/data.tgz").toURI());
+
+        return Arrays.asList(
+                new DataProducerDirectory(directory, null, null, null),
+                new DataProducerFile(new File("pom.xml"), "/usr/share/myapp/pom.xml", null, null, null),
+                new DataProducerLink("/usr/share/myapp/link.xml", "pom.xml", true, null, null, null),
+                new DataProducerArchive(archive, null, null, null));
+    }
+
+    @Test
+    public void testSameEntriesInOrder() throws Exception {
+        RecordingConsumer expected = new RecordingConsumer();
+        for (DataProducer producer : createProducers()) {
+            producer.produce(expected);
+        }
+
+        // a small limit to mix the files read ahead and the ones streamed by the consumer
+        RecordingConsumer actual = new RecordingConsumer();
+        new ReadAheadPipeline(4, 1024, 4096).produce(createProducers(), actual);
+
+        assertFalse(expected.entries.isEmpty());
+        assertEquals(expected.entries, actual.entries);
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        DataProducer producer = new DataProducerFile(new File("target/missing-file"), "/usr/share/myapp/missing", null, null, null);
+
+        try {
+            new ReadAheadPipeline(2, 1024, 4096).produce(Arrays.asList(producer), new RecordingConsumer());
+            fail("ProducerFileNotFoundException expected");
+        } catch (ProducerFileNotFoundException e) {
+            assertEquals(new File("target/missing-file").getAbsolutePath(), e.getFilePath());
+        }
+    }
+}
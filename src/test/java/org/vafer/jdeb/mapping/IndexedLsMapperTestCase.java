@@ -0,0 +1,132 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vafer.jdeb.mapping.LsMapper.ParseError;
+
+import static java.nio.charset.StandardCharsets.*;
+
+public final class IndexedLsMapperTestCase extends Assert {
+
+    private final static String output =
+        "total 0\n" +
+            "drwxr-xr-x   23 tcurdt  tcurdt   782 Jun 25 03:48 .\n" +
+            "drwxr-xr-x    3 tcurdt  tcurdt   102 Jun 25 03:48 ..\n" +
+            "-rwx------    1 root    wheel     12 Jun 25 03:48 start.sh\n" +
+            "\n" +
+            "./trunk/target/test-classes/org/vafer/dependency:\n" +
+            "total 176\n" +
+            "drwxr-x---   23 tcurdt  staff   782 Jun 25 03:48 .\n" +
+            "drwxr-xr-x    3 tcurdt  tcurdt   102 Jun 25 03:48 ..\n" +
+            "-rw-r--r--    1 tcurdt  tcurdt  2934 Jun 25 03:48 DependenciesTestCase.class\n" +
+            "-rw-------    1 daemon  daemon   786 Jun 25 03:48 JarCombiningTestCase$1.class\n" +
+            "lrwxrwxrwx    1 tcurdt  tcurdt    28 Jun 25 03:48 Link.class -> DependenciesTestCase.class\n" +
+            "drwxr-xr-x    4 tcurdt  tcurdt   136 Jun 25 03:48 classes\n" +
+            "\n" +
+            "./trunk/target/test-classes/org/vafer/dependency/classes:\n" +
+            "total 4\n" +
+            "drwxr-xr-x    4 tcurdt  tcurdt   136 Jun 25 03:48 .\n" +
+            "drwxr-x---   23 tcurdt  staff   782 Jun 25 03:48 ..\n" +
+            "-r--r--r--    1 tcurdt  tcurdt  2934 Jun 25 03:48 Empty.class\n";
+
+    private static final String[] PATHS = {
+        "trunk/target/test-classes/org/vafer/dependency",
+        "trunk/target/test-classes/org/vafer/dependency/DependenciesTestCase.class",
+        "trunk/target/test-classes/org/vafer/dependency/JarCombiningTestCase$1.class",
+        "trunk/target/test-classes/org/vafer/dependency/classes/Empty.class",
+        "trunk/target/test-classes/org/vafer/dependency/Link.class",
+        "trunk/target/test-classes/org/vafer",
+        "trunk/src/Unknown.class"
+    };
+
+    @Test
+    public void testSameAsLsMapper() throws Exception {
+        final String listing = output.replace("lrwxrwxrwx", "-rw-rw-rw-").replace(" -> DependenciesTestCase.class", "");
+        final Mapper expected = new LsMapper(new ByteArrayInputStream(listing.getBytes(UTF_8)));
+        final Mapper mapper = new IndexedLsMapper(new ByteArrayInputStream(listing.getBytes(UTF_8)));
+
+        for (String path : PATHS) {
+            final TarArchiveEntry expectedEntry = expected.map(new TarArchiveEntry(path, true));
+            final TarArchiveEntry entry = mapper.map(new TarArchiveEntry(path, true));
+
+            assertEquals(path, expectedEntry.getMode(), entry.getMode());
+            assertEquals(path, expectedEntry.getUserName(), entry.getUserName());
+            assertEquals(path, expectedEntry.getGroupName(), entry.getGroupName());
+            assertEquals(path, expectedEntry.getLongUserId(), entry.getLongUserId());
+            assertEquals(path, expectedEntry.getLongGroupId(), entry.getLongGroupId());
+        }
+    }
+
+    @Test
+    public void testModes() throws Exception {
+        final Mapper mapper = new IndexedLsMapper(new ByteArrayInputStream(output.getBytes(UTF_8)));
+
+        final TarArchiveEntry dir = mapper.map(new TarArchiveEntry("trunk/target/test-classes/org/vafer/dependency/"));
+        assertEquals(0750, dir.getMode());
+        assertEquals("tcurdt", dir.getUserName());
+        assertEquals("staff", dir.getGroupName());
+
+        final TarArchiveEntry file = mapper.map(new TarArchiveEntry("./trunk/target/test-classes/org/vafer/dependency/JarCombiningTestCase$1.class", true));
+        assertEquals(0600, file.getMode());
+        assertEquals("daemon", file.getUserName());
+        assertEquals("daemon", file.getGroupName());
+
+        final TarArchiveEntry root = mapper.map(new TarArchiveEntry("start.sh", true));
+        assertEquals(0700, root.getMode());
+        assertEquals("root", root.getUserName());
+        assertEquals("wheel", root.getGroupName());
+    }
+
+    @Test
+    public void testUnlisted() throws Exception {
+        final Mapper mapper = new IndexedLsMapper(new ByteArrayInputStream(output.getBytes(UTF_8)));
+
+        final TarArchiveEntry link = new TarArchiveEntry("trunk/target/test-classes/org/vafer/dependency/Link.class", true);
+        link.setMode(0100664);
+        assertSame(link, mapper.map(link));
+        assertEquals(0100664, link.getMode());
+
+        // parent directories not listed themselves
+        final TarArchiveEntry parent = new TarArchiveEntry("trunk/target/", true);
+        parent.setMode(040711);
+        mapper.map(parent);
+        assertEquals(040711, parent.getMode());
+    }
+
+    @Test
+    public void testPrematureEOF() throws Exception {
+        try {
+            new IndexedLsMapper(new ByteArrayInputStream(output.substring(0, 200).getBytes(UTF_8)));
+            fail("should fail to parse");
+        } catch (ParseError e) {
+        }
+    }
+
+    @Test
+    public void testWrongFormat() throws Exception {
+        try {
+            new IndexedLsMapper(new ByteArrayInputStream("asas\n".getBytes(UTF_8)));
+            fail("should fail to parse");
+        } catch (ParseError e) {
+        }
+    }
+}
@@ -78,9 +78,13 @@ public final class LsMapperTestCase extends Assert {
         assertSame(unknown, mapper.map(unknown));
 
         final TarArchiveEntry known = new TarArchiveEntry("trunk/target/test-classes/org/vafer/dependency", true);
+        known.setSize(782);
         final TarArchiveEntry knownMapped = mapper.map(known);
 
-        assertNotSame(known, knownMapped);
+        // mapped in place, keeping the attributes not listed
+        assertSame(known, knownMapped);
+        assertEquals("tcurdt", knownMapped.getUserName());
+        assertEquals(782, knownMapped.getSize());
 
     }
 
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.mapping;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class MapperChainTestCase extends Assert {
+
+    @Test
+    public void testEmptyChain() {
+        assertSame(NullMapper.INSTANCE, MapperChain.of());
+        assertSame(NullMapper.INSTANCE, MapperChain.of((Mapper[]) null));
+        assertSame(NullMapper.INSTANCE, MapperChain.of(NullMapper.INSTANCE));
+    }
+
+    @Test
+    public void testSingleMapper() {
+        Mapper mapper = new PermMapper(-1, -1, "user", null, -1, -1, 0, null);
+        assertSame(mapper, MapperChain.of(NullMapper.INSTANCE, mapper));
+    }
+
+    @Test
+    public void testFusedPermMappers() {
+        Mapper prefix = new PermMapper(1000, 1000, "user", "group", 0640, 0750, 1, "/opt/app");
+        Mapper owner = new PermMapper(0, -1, "root", null, 0644, -1, 0, null);
+
+        Mapper chain = MapperChain.of(prefix, owner);
+        assertTrue("the mappers weren't fused", chain instanceof PermMapper);
+
+        for (boolean directory : new boolean[] { false, true }) {
+            String name = directory ? "build/lib/" : "build/lib/file.jar";
+
+            TarArchiveEntry expected = owner.map(prefix.map(new TarArchiveEntry(name, true)));
+            TarArchiveEntry actual = chain.map(new TarArchiveEntry(name, true));
+
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getMode(), actual.getMode());
+            assertEquals(expected.getLongUserId(), actual.getLongUserId());
+            assertEquals(expected.getLongGroupId(), actual.getLongGroupId());
+            assertEquals(expected.getUserName(), actual.getUserName());
+            assertEquals(expected.getGroupName(), actual.getGroupName());
+        }
+    }
+
+    @Test
+    public void testPathChangesNotFused() {
+        Mapper first = new PermMapper(-1, -1, null, null, -1, -1, 1, "usr");
+        Mapper second = new PermMapper(-1, -1, null, null, -1, -1, 1, "/opt");
+
+        Mapper chain = MapperChain.of(first, second);
+        assertTrue(chain instanceof MapperChain);
+
+        TarArchiveEntry entry = new TarArchiveEntry("build/share/file.txt", true);
+        assertSame(entry, chain.map(entry));
+        assertEquals("opt/share/file.txt", entry.getName());
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class MapperTestCase extends Assert {
+
+    @Test
+    public void testInvalidIndexedListing() throws Exception {
+        File listing = File.createTempFile("jdeb", ".ls");
+        try {
+            FileUtils.writeStringToFile(listing, "not a listing\n", StandardCharsets.UTF_8);
+
+            Mapper mapper = new Mapper();
+            FieldUtils.writeField(mapper, "type", "ls-indexed", true);
+            FieldUtils.writeField(mapper, "src", listing, true);
+
+            assertThrows(IOException.class, mapper::createMapper);
+        } finally {
+            assertTrue("Cannot delete the file " + listing, listing.delete());
+        }
+    }
+}
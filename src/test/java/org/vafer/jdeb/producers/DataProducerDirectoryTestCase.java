@@ -0,0 +1,158 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.vafer.jdeb.DataConsumer;
+
+public final class DataProducerDirectoryTestCase extends Assert {
+
+    private File dir;
+
+    private final List<String> entries = new ArrayList<>();
+
+    private final DataConsumer consumer = new DataConsumer() {
+        public void onEachDir(TarArchiveEntry dirEntry) {
+            entries.add(dirEntry.getName());
+        }
+
+        public void onEachFile(InputStream input, TarArchiveEntry fileEntry) {
+            entries.add(fileEntry.getName() + " (" + fileEntry.getSize() + ")");
+        }
+
+        public void onEachLink(TarArchiveEntry linkEntry) {
+            entries.add(linkEntry.getName() + " -> " + linkEntry.getLinkName());
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("jdeb").toFile();
+        write("b/z.txt", "zz");
+        write("b/a.txt", "a");
+        write("a/c/d.txt", "ddd");
+        write("a/e.log", "eeee");
+        write("root.txt", "");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+    }
+
+    @Test
+    public void testSortedPreOrder() throws Exception {
+        new DataProducerDirectory(dir, null, null, null).produce(consumer);
+
+        assertEquals(Arrays.asList(
+                "a/",
+                "a/c/",
+                "a/c/d.txt (3)",
+                "a/e.log (4)",
+                "b/",
+                "b/a.txt (1)",
+                "b/z.txt (2)",
+                "root.txt (0)"), entries);
+    }
+
+    @Test
+    public void testWideTree() throws Exception {
+        FileUtils.cleanDirectory(dir);
+        List<String> expected = new ArrayList<>();
+        for (int i = 10; i < 40; i++) {
+            expected.add("d" + i + "/");
+            for (int j = 10; j < 15; j++) {
+                write("d" + i + "/s" + j + "/f.txt", "x");
+                expected.add("d" + i + "/s" + j + "/");
+                expected.add("d" + i + "/s" + j + "/f.txt (1)");
+            }
+        }
+
+        new DataProducerDirectory(dir, null, null, null).produce(consumer);
+
+        assertEquals(expected, entries);
+    }
+
+    @Test
+    public void testIncludesAndExcludes() throws Exception {
+        new DataProducerDirectory(dir, new String[] { "**/*.txt" }, new String[] { "b/" }, null).produce(consumer);
+
+        assertEquals(Arrays.asList("a/c/d.txt (3)", "root.txt (0)"), entries);
+    }
+
+    @Test
+    public void testSymlinkToParent() throws Exception {
+        Files.createSymbolicLink(new File(dir, "a/c/loop").toPath(), dir.toPath());
+        Files.createSymbolicLink(new File(dir, "linked").toPath(), new File(dir, "b").toPath());
+
+        new DataProducerDirectory(dir, null, null, null).produce(consumer);
+
+        assertFalse("link to a parent followed", entries.contains("a/c/loop/"));
+        assertTrue("linked directory not followed", entries.contains("linked/z.txt (2)"));
+    }
+
+    @Test
+    public void testHardLinks() throws Exception {
+        Files.createLink(new File(dir, "b/linked.log").toPath(), new File(dir, "a/e.log").toPath());
+        Files.createLink(new File(dir, "c.log").toPath(), new File(dir, "a/e.log").toPath());
+        Files.createSymbolicLink(new File(dir, "d.log").toPath(), new File(dir, "a/e.log").toPath());
+
+        new DataProducerDirectory(dir, null, new String[] { "b/a.txt", "b/z.txt", "root.txt" }, null, true).produce(consumer);
+
+        assertEquals(Arrays.asList(
+                "a/",
+                "a/c/",
+                "a/c/d.txt (3)",
+                "a/e.log (4)",
+                "b/",
+                "b/linked.log -> a/e.log",
+                "c.log -> a/e.log",
+                "d.log (4)"), entries);
+    }
+
+    @Test
+    public void testHardLinksDisabled() throws Exception {
+        Files.createLink(new File(dir, "c.log").toPath(), new File(dir, "a/e.log").toPath());
+
+        new DataProducerDirectory(dir, null, new String[] { "b/**", "root.txt" }, null).produce(consumer);
+
+        assertEquals(Arrays.asList(
+                "a/",
+                "a/c/",
+                "a/c/d.txt (3)",
+                "a/e.log (4)",
+                "c.log (4)"), entries);
+    }
+}
@@ -1,6 +1,7 @@
 package org.vafer.jdeb.producers;
 
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -39,7 +40,7 @@ public final class DataProducerFilesTestCase extends Assert {
 
     @Test
     public void testProducesMultiplePaths() throws IOException {
-        DataConsumer consumer = mock(DataConsumer.class);
+        DataConsumer consumer = mock(DataConsumer.class, CALLS_REAL_METHODS);
         new DataProducerFiles(
                 new String[]{
                         file1.getAbsolutePath(),
@@ -80,7 +81,7 @@ public final class DataProducerFilesTestCase extends Assert {
 
     @Test
     public void testProducesMultiplePathsNoDestination() throws IOException {
-        DataConsumer consumer = mock(DataConsumer.class);
+        DataConsumer consumer = mock(DataConsumer.class, CALLS_REAL_METHODS);
         new DataProducerFiles(
                 new String[]{
                         file1.getAbsolutePath(),
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.producers;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.utils.MapVariableResolver;
+
+public final class DataProducerFilteredTestCase extends Assert {
+
+    private final Map<String, String> contents = new LinkedHashMap<>();
+
+    private final DataConsumer consumer = new DataConsumer() {
+        public void onEachDir(TarArchiveEntry dirEntry) {
+        }
+
+        public void onEachFile(InputStream input, TarArchiveEntry fileEntry) throws IOException {
+            byte[] content = IOUtils.toByteArray(input);
+            assertEquals("size of " + fileEntry.getName(), content.length, fileEntry.getSize());
+            contents.put(fileEntry.getName(), new String(content, StandardCharsets.UTF_8));
+        }
+
+        public void onEachLink(TarArchiveEntry linkEntry) {
+        }
+    };
+
+    private static DataProducer filtered(DataProducer producer) {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("name", "jdeb");
+        variables.put("version", "1.2.3");
+        return new DataProducerFiltered(producer, new MapVariableResolver(variables), StandardCharsets.UTF_8, "[[", "]]");
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        filtered(receiver -> {
+            byte[] content = "name=[[name]]\r\nversion=[[version]]\r\nunknown=[[unknown]]\r\nhé".getBytes(StandardCharsets.UTF_8);
+            TarArchiveEntry entry = new TarArchiveEntry("etc/app.conf", true);
+            entry.setSize(content.length);
+            receiver.onEachFile(new ByteArrayInputStream(content), entry);
+        }).produce(consumer);
+
+        assertEquals("name=jdeb\r\nversion=1.2.3\r\nunknown=[[unknown]]\r\nhé", contents.get("etc/app.conf"));
+    }
+
+    @Test
+    public void testBinaryFile() throws Exception {
+        final byte[] content = { 'P', 'K', 0x03, 0x04, 0x00, (byte) 0xFF, '[', '[', 'n', 'a', 'm', 'e', ']', ']' };
+        filtered(receiver -> {
+            TarArchiveEntry entry = new TarArchiveEntry("usr/share/app/app.zip", true);
+            entry.setSize(content.length);
+            receiver.onEachFile(new ByteArrayInputStream(content), entry);
+        }).produce(consumer);
+
+        assertEquals(new String(content, StandardCharsets.UTF_8), contents.get("usr/share/app/app.zip"));
+    }
+
+    @Test
+    public void testLargeFile() throws Exception {
+        File dir = Files.createTempDirectory("jdeb").toFile();
+        try {
+            StringBuilder content = new StringBuilder();
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 100000; i++) {
+                content.append("line ").append(i).append(" of [[name]]\n");
+                expected.append("line ").append(i).append(" of jdeb\n");
+            }
+            FileUtils.writeStringToFile(new File(dir, "large.txt"), content.toString(), StandardCharsets.UTF_8);
+
+            filtered(new DataProducerDirectory(dir, null, null, null)).produce(consumer);
+
+            assertEquals(expected.toString(), contents.get("large.txt"));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
@@ -16,22 +16,29 @@
 
 package org.vafer.jdeb.signing;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.junit.Test;
 import org.junit.Assert;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.bouncycastle.openpgp.PGPSignature;
 import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPSignatureList;
 import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.bc.BcPGPObjectFactory;
 import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentVerifierBuilderProvider;
 import org.vafer.jdeb.ArchiveWalker;
 import org.vafer.jdeb.Compression;
 import org.vafer.jdeb.DataProducer;
@@ -100,6 +107,36 @@ public final class DebMakerTestCase extends Assert {
             assertTrue("/link/path-element.ext wasn't found in the package", filesInDeb.containsKey("./link/path-element.ext"));
             assertEquals("/link/path-element.ext has wrong link target", "/link/target-element.ext", filesInDeb.get("./link/path-element.ext").getLinkName());
 
+            if (i == 0) {
+                // the debsig signature covers the members in the order of the package
+                final Map<String, byte[]> members = new LinkedHashMap<>();
+                ArchiveWalker.walkArchive(deb, (entry, content) -> members.put(entry.getName(), content));
+
+                byte[] armored = members.remove("_gpgorigin");
+                PGPSignatureList signatures = (PGPSignatureList) new BcPGPObjectFactory(PGPUtil.getDecoderStream(new ByteArrayInputStream(armored))).nextObject();
+                PGPSignature signature = signatures.get(0);
+                signature.init(new BcPGPContentVerifierBuilderProvider(), signer.getSecretKey().getPublicKey());
+                assertEquals("members", Arrays.asList("debian-binary", "control.tar.gz", "data.tar.gz"), new ArrayList<>(members.keySet()));
+                for (byte[] content : members.values()) {
+                    signature.update(content);
+                }
+                assertTrue("invalid debsig signature", signature.verify());
+            }
+
+            if (i == 1) {
+                // the dpkg-sig signature lists the checksums and sizes of the members
+                final Map<String, byte[]> members = new HashMap<>();
+                ArchiveWalker.walkArchive(deb, (entry, content) -> members.put(entry.getName(), content));
+
+                String signature = new String(members.remove("_gpgorigin"), StandardCharsets.UTF_8);
+                assertEquals("members", 3, members.size());
+                for (Map.Entry<String, byte[]> member : members.entrySet()) {
+                    byte[] content = member.getValue();
+                    String line = "\t" + DigestUtils.md5Hex(content) + " " + DigestUtils.sha256Hex(content) + " " + content.length + " " + member.getKey() + "\n";
+                    assertTrue("checksums of " + member.getKey(), signature.contains(line));
+                }
+            }
+
             if (i == 0) {
                 FileUtils.copyFile(deb, new File("./target/test_debsig-verify.deb"));
             } else {
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.signing;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class PGPKeyCacheTestCase extends Assert {
+
+    private File keyring;
+
+    @Before
+    public void setUp() throws Exception {
+        keyring = File.createTempFile("jdeb", ".gpg");
+        try (InputStream ring = getClass().getClassLoader().getResourceAsStream("org/vafer/gpg/secring.gpg")) {
+            FileUtils.copyInputStreamToFile(ring, keyring);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PGPKeyCache.evict(keyring);
+        keyring.delete();
+    }
+
+    @Test
+    public void testKeyDecryptedOnce() throws Exception {
+        PGPSigner signer = PGPKeyCache.getSigner(keyring, "2E074D8F", "test", PGPUtil.SHA1);
+
+        assertSame(signer.getPrivateKey(), PGPKeyCache.getSigner(keyring, "2e074d8f", "test", PGPUtil.SHA256).getPrivateKey());
+        assertNotSame(signer.getPrivateKey(), PGPKeyCache.getSigner(keyring, "0C1FF47A", "test", PGPUtil.SHA1).getPrivateKey());
+    }
+
+    @Test
+    public void testWrongPassphrase() throws Exception {
+        PGPKeyCache.getSigner(keyring, "2E074D8F", "test", PGPUtil.SHA1);
+
+        try {
+            PGPKeyCache.getSigner(keyring, "2E074D8F", "wrong", PGPUtil.SHA1);
+            fail("the key was decrypted with a wrong passphrase");
+        } catch (PGPException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testModifiedKeyring() throws Exception {
+        PGPSigner signer = PGPKeyCache.getSigner(keyring, "2E074D8F", "test", PGPUtil.SHA1);
+
+        assertTrue(keyring.setLastModified(keyring.lastModified() - 10000));
+
+        assertNotSame(signer.getPrivateKey(), PGPKeyCache.getSigner(keyring, "2E074D8F", "test", PGPUtil.SHA1).getPrivateKey());
+    }
+
+    @Test
+    public void testEvict() throws Exception {
+        PGPSigner signer = PGPKeyCache.getSigner(keyring, "2E074D8F", "test", PGPUtil.SHA1);
+
+        PGPKeyCache.evict(keyring);
+
+        assertNotSame(signer.getPrivateKey(), PGPKeyCache.getSigner(keyring, "2E074D8F", "test", PGPUtil.SHA1).getPrivateKey());
+    }
+}
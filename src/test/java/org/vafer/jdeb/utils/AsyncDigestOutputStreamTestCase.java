@@ -0,0 +1,63 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class AsyncDigestOutputStreamTestCase extends Assert {
+
+    @Test
+    public void testDigests() throws Exception {
+        byte[] content = new byte[10 * 1024 * 1024 + 123];
+        new Random(42).nextBytes(content);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AsyncDigestOutputStream out = new AsyncDigestOutputStream(output, MessageDigest.getInstance("MD5"), MessageDigest.getInstance("SHA-256"));
+        Random random = new Random(1);
+        int off = 0;
+        while (off < content.length) {
+            if (random.nextInt(4) == 0) {
+                out.write(content[off++]);
+            } else {
+                int len = Math.min(content.length - off, random.nextInt(3 * 1024 * 1024));
+                out.write(content, off, len);
+                off += len;
+            }
+        }
+        out.close();
+
+        assertArrayEquals(content, output.toByteArray());
+        assertEquals(content.length, out.getSize());
+        assertEquals(DigestUtils.md5Hex(content), out.getHexDigest(0));
+        assertEquals(DigestUtils.sha256Hex(content), out.getHexDigest(1));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        AsyncDigestOutputStream out = new AsyncDigestOutputStream(new ByteArrayOutputStream(), MessageDigest.getInstance("SHA1"));
+        out.close();
+
+        assertEquals(0, out.getSize());
+        assertEquals(DigestUtils.sha1Hex(new byte[0]), out.getHexDigest(0));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class ContentClassifierTestCase extends Assert {
+
+    @Test
+    public void testBufferSameAsBytes() {
+        Random random = new Random(42);
+        byte[] content = new byte[20000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (random.nextBoolean() ? "\r\n\0a".charAt(random.nextInt(4)) : random.nextInt(256));
+        }
+        content[0] = '#';
+        content[1] = '!';
+
+        ContentClassifier bytes = new ContentClassifier();
+        for (byte b : content) {
+            bytes.update(b);
+        }
+
+        ContentClassifier buffers = new ContentClassifier();
+        for (int off = 0; off < content.length; off += 7000) {
+            buffers.update(content, off, Math.min(7000, content.length - off));
+        }
+
+        assertEquals(bytes.toString(), buffers.toString());
+        assertTrue("Shebang not detected", buffers.isShell());
+        assertFalse("Should be windows line endings", buffers.hasUnixLineEndings());
+    }
+
+    @Test
+    public void testHeaderSplitAcrossBuffers() {
+        byte[] content = { (byte) 0xFF, (byte) 0xFE, 0x23, 0x00, 0x21, 0x00, 0x2F, 0x00, 0x0A, 0x00 };
+
+        ContentClassifier classifier = new ContentClassifier();
+        classifier.update(content, 0, 1);
+        classifier.update(content, 1, content.length - 1);
+
+        assertTrue("BOM not detected", classifier.hasBom());
+        assertTrue("Shebang not detected", classifier.isShell());
+        assertTrue("Should be unix line endings", classifier.hasUnixLineEndings());
+        assertEquals("Encoding", "UTF-16LE", classifier.getEncoding());
+        assertEquals("{total=10,noascii=2,ascii=3,cr=0,lf=1,zero=4}", classifier.toString());
+        assertFalse("UTF-16 text isn't binary", classifier.isBinary());
+    }
+
+    @Test
+    public void testBinary() {
+        byte[] text = "key=value\n".getBytes();
+        byte[] data = { 'P', 'K', 0x03, 0x04, 0x00, 0x00 };
+
+        ContentClassifier classifier = new ContentClassifier();
+        classifier.update(text, 0, text.length);
+        assertFalse("Text isn't binary", classifier.isBinary());
+
+        classifier = new ContentClassifier();
+        classifier.update(data, 0, data.length);
+        assertTrue("Null bytes expected in binaries", classifier.isBinary());
+    }
+}
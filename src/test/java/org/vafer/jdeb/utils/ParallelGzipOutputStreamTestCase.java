@@ -0,0 +1,102 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class ParallelGzipOutputStreamTestCase extends Assert {
+
+    private static byte[] createInput(int size) {
+        Random random = new Random(42);
+        byte[] input = new byte[size];
+        for (int i = 0; i < size; i++) {
+            // mix of repetitive and random data to exercise the dictionary
+            input[i] = (i / 1000) % 2 == 0 ? (byte) ('a' + i % 7) : (byte) random.nextInt();
+        }
+        return input;
+    }
+
+    private static byte[] compress(byte[] input, int threads, int blockSize) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(output, threads, blockSize, Deflater.DEFAULT_COMPRESSION)) {
+            // uneven writes to cross the block boundaries
+            int offset = 0;
+            int chunk = 1;
+            while (offset < input.length) {
+                int n = Math.min(chunk, input.length - offset);
+                out.write(input, offset, n);
+                offset += n;
+                chunk = chunk * 3 % 10007 + 1;
+            }
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] input = createInput(1024 * 1024 + 17);
+
+        assertArrayEquals(input, decompress(compress(input, 4, 64 * 1024)));
+        assertArrayEquals(input, decompress(compress(input, 1, 1000)));
+    }
+
+    @Test
+    public void testEmptyInput() throws Exception {
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0], 2, 1024)));
+    }
+
+    @Test
+    public void testSingleByteWrites() throws Exception {
+        byte[] input = createInput(5000);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(output, 3, 512, Deflater.BEST_SPEED)) {
+            for (byte b : input) {
+                out.write(b);
+            }
+        }
+
+        assertArrayEquals(input, decompress(output.toByteArray()));
+    }
+
+    @Test
+    public void testReproducible() throws Exception {
+        byte[] input = createInput(300 * 1024);
+
+        byte[] first = compress(input, 4, 32 * 1024);
+        byte[] second = compress(input, 4, 32 * 1024);
+        byte[] singleThreaded = compress(input, 1, 32 * 1024);
+
+        assertArrayEquals("same settings", first, second);
+        assertArrayEquals("different thread count", first, singleThreaded);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+import org.tukaani.xz.XZInputStream;
+
+public final class ParallelXzOutputStreamTestCase extends Assert {
+
+    private static byte[] createInput(int size) {
+        Random random = new Random(7);
+        byte[] input = new byte[size];
+        for (int i = 0; i < size; i++) {
+            input[i] = (i / 2000) % 2 == 0 ? (byte) ('0' + i % 10) : (byte) random.nextInt();
+        }
+        return input;
+    }
+
+    private static byte[] compress(byte[] input, int threads, int blockSize) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ParallelXzOutputStream out = new ParallelXzOutputStream(output, threads, blockSize, 1)) {
+            out.write(input);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (XZInputStream in = new XZInputStream(new ByteArrayInputStream(compressed))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] input = createInput(500 * 1024 + 3);
+
+        assertArrayEquals(input, decompress(compress(input, 3, 64 * 1024)));
+    }
+
+    @Test
+    public void testEmptyInput() throws Exception {
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0], 2, 64 * 1024)));
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        byte[] input = createInput(300 * 1024 + 10);
+
+        File file = File.createTempFile("jdeb", ".xz");
+        try {
+            FileUtils.writeByteArrayToFile(file, compress(input, 2, 100 * 1024));
+
+            try (SeekableXZInputStream in = new SeekableXZInputStream(new SeekableFileInputStream(file))) {
+                assertEquals("blocks", 4, in.getBlockCount());
+                assertEquals("uncompressed size", input.length, in.length());
+                assertEquals(100 * 1024, in.getBlockSize(0));
+                assertEquals(10, in.getBlockSize(3));
+
+                // random access to the last block relies on the index
+                in.seek(300 * 1024 + 5);
+                assertEquals(input[300 * 1024 + 5], (byte) in.read());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReproducible() throws Exception {
+        byte[] input = createInput(200 * 1024);
+
+        assertArrayEquals(compress(input, 4, 32 * 1024), compress(input, 1, 32 * 1024));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class PatternMatcherTestCase extends Assert {
+
+    private static final String[] PATTERNS = {
+        "**", "*", "", "**/*.txt", "*.txt", "usr/**", "usr/share/**/doc", "usr/*/doc/**",
+        "**/test/**", "/etc/**", "/etc/*.conf", "a?c", "**/a*b*c", "usr/share/", "**/**/x", "./test/*",
+        "**/*.so*", "usr/lib/**/*.jar", "usr/share/doc"
+    };
+
+    private static final String[] PATHS = {
+        "", "a", "abc", "abbc", "file.txt", "dir/file.txt", "usr", "usr/share", "usr/share/doc", "usr/share/foo/bar/doc",
+        "usr/lib/doc/readme", "usr/lib/app/lib/x.jar", "usr/lib/x.jar", "test", "a/test", "a/test/b", "/etc", "/etc/app.conf",
+        "/etc/app/app.conf", "etc/app.conf", "x/aXbYc", "aXbYc/d", "x", "q/x", "q/r/x", "./test/testfile", "test/testfile",
+        "lib/libfoo.so", "lib/libfoo.so.1.2", "usr/share/doc/", "usr//share///doc"
+    };
+
+    @Test
+    public void testSameAsAnt() {
+        for (String pattern : PATTERNS) {
+            PatternMatcher matcher = PatternMatcher.compile(pattern);
+            for (String path : PATHS) {
+                assertEquals("'" + pattern + "' matching '" + path + "'", SelectorUtils.matchPath(pattern, path), matcher.matches(path));
+            }
+        }
+    }
+
+    @Test
+    public void testPatternSet() {
+        PatternMatcher matcher = PatternMatcher.compile(PATTERNS);
+        for (String path : PATHS) {
+            boolean expected = false;
+            for (String pattern : PATTERNS) {
+                expected |= SelectorUtils.matchPath(pattern, path);
+            }
+            assertEquals("'" + path + "'", expected, matcher.matches(path));
+        }
+    }
+
+    @Test
+    public void testMayMatchBelow() {
+        PatternMatcher matcher = PatternMatcher.compile("usr/share/**/*.txt", "etc/app.conf");
+
+        assertTrue(matcher.mayMatchBelow("usr"));
+        assertTrue(matcher.mayMatchBelow("usr/share/doc/deep"));
+        assertTrue(matcher.mayMatchBelow("etc"));
+        assertFalse(matcher.mayMatchBelow("etc/app.conf"));
+        assertFalse(matcher.mayMatchBelow("usr/lib"));
+        assertFalse(matcher.mayMatchBelow("var"));
+    }
+
+    @Test
+    public void testMatchesAllBelow() {
+        PatternMatcher matcher = PatternMatcher.compile("**/.git/**", "tmp/*");
+
+        assertTrue(matcher.matchesAllBelow(".git"));
+        assertTrue(matcher.matchesAllBelow("src/module/.git"));
+        assertFalse(matcher.matchesAllBelow("src"));
+        assertFalse(matcher.matchesAllBelow("tmp"));
+    }
+}
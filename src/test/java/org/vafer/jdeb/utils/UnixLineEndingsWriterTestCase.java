@@ -0,0 +1,71 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class UnixLineEndingsWriterTestCase extends Assert {
+
+    private static final char[] ALPHABET = { 'a', '\r', '\n', 0x1A };
+
+    private static String convert( String text ) throws IOException {
+        StringWriter output = new StringWriter();
+        try (Writer writer = new UnixLineEndingsWriter(output)) {
+            writer.write(text);
+        }
+        return output.toString();
+    }
+
+    @Test
+    public void testLineEndings() throws Exception {
+        assertEquals("a\nb\n", convert("a\r\nb"));
+        assertEquals("a\nb\n", convert("a\rb\r"));
+        assertEquals("a\n\nb\n", convert("a\r\rb"));
+        assertEquals("a\nb\n", convert("a\r\r\nb"));
+        assertEquals("a\nb", convert("a\nb"));
+        assertEquals("a\u001a", convert("a\u001a"));
+    }
+
+    @Test
+    public void testSameAsFixCrLf() throws Exception {
+        // all the texts of up to 7 characters
+        for (int length = 0; length <= 7; length++) {
+            int combinations = 1 << (2 * length);
+            for (int n = 0; n < combinations; n++) {
+                char[] chars = new char[length];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = ALPHABET[(n >> (2 * i)) & 3];
+                }
+                String text = new String(chars);
+
+                String expected = text;
+                if (text.indexOf('\r') >= 0) {
+                    expected = new String(Utils.toUnixLineEndings(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+                }
+
+                assertEquals(text.replace("\r", "\\r").replace("\n", "\\n"), expected, convert(text));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class VariableTemplateTestCase extends Assert {
+
+    private final VariableResolver resolver;
+
+    public VariableTemplateTestCase() {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("name", "jdeb");
+        variables.put("version", "1.2.3");
+        resolver = new MapVariableResolver(variables);
+    }
+
+    @Test
+    public void testRender() {
+        VariableTemplate template = VariableTemplate.compile("[[name]] [[version]] [[undefined]]", "[[", "]]");
+
+        assertEquals("jdeb 1.2.3 [[undefined]]", template.render(resolver));
+        assertEquals("[[name]] [[version]] [[undefined]]", template.render(name -> null));
+        assertEquals("x x x", template.render(name -> "x"));
+    }
+
+    @Test
+    public void testSameAsReplaceVariables() {
+        String[] expressions = {
+            "", "[[name]]", "[[ [[name]] ]]", "if [[ \"${HOST_TYPE}\" -eq \"admin\" ]] ; then", "c[t]['A']",
+            "if [ -e some_file ]", "[[name", "name]]", "[[[name]]]", "[[[[name]]]]", "]][[name]][[", "[[]]"
+        };
+        for (String expression : expressions) {
+            assertEquals(expression, Utils.replaceVariables(resolver, expression, "[[", "]]"), VariableTemplate.compile(expression, "[[", "]]").render(resolver));
+        }
+    }
+
+    @Test
+    public void testCache() {
+        assertSame(VariableTemplate.compile("[[name]]", "[[", "]]"), VariableTemplate.compile("[[name]]", "[[", "]]"));
+        assertNotSame(VariableTemplate.compile("[[name]]", "[[", "]]"), VariableTemplate.compile("[[name]]", "[", "]"));
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        StringWriter out = new StringWriter();
+        VariableTemplate.filter(new StringReader("Package: [[name]]\r\nVersion: [[version\rDepends: [[ [[name]] ]]"), out, resolver, "[[", "]]");
+
+        assertEquals("Package: jdeb\nVersion: [[version\nDepends: [[ jdeb ]]\n", out.toString());
+    }
+
+    @Test
+    public void testFilterWithoutResolver() throws Exception {
+        StringWriter out = new StringWriter();
+        VariableTemplate.filter(new StringReader("[[name]]\r\n\r\n"), out, null, "[[", "]]");
+
+        assertEquals("[[name]]\n\n", out.toString());
+    }
+}